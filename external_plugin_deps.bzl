@@ -6,3 +6,23 @@ def external_plugin_deps():
         artifact = "com.rabbitmq:amqp-client:5.10.0",
         sha1 = "4de351467a13b8ca4eb7e8023032f9f964a21796",
     )
+    maven_jar(
+        name = "jmh_core",
+        artifact = "org.openjdk.jmh:jmh-core:1.37",
+        sha1 = "896f27e49105b35ea1964319c83d12082e7a79ef",
+    )
+    maven_jar(
+        name = "jmh_generator_annprocess",
+        artifact = "org.openjdk.jmh:jmh-generator-annprocess:1.37",
+        sha1 = "da93888682df163144edf9b13d2b78e54166063a",
+    )
+    maven_jar(
+        name = "jopt_simple",
+        artifact = "net.sf.jopt-simple:jopt-simple:5.0.4",
+        sha1 = "4fdac2fbe92dfad86aa6e9301736f6b4342a3f5c",
+    )
+    maven_jar(
+        name = "commons_math3",
+        artifact = "org.apache.commons:commons-math3:3.6.1",
+        sha1 = "e4ba98f1d4b3c80ec46392f25e094a6a2e58fcbf",
+    )
@@ -21,18 +21,27 @@ import com.google.gson.Gson;
 import com.google.inject.AbstractModule;
 import com.google.inject.Singleton;
 import com.google.inject.assistedinject.FactoryModuleBuilder;
+import com.google.inject.multibindings.MapBinder;
 import com.google.inject.multibindings.Multibinder;
 import com.googlesource.gerrit.plugins.rabbitmq.config.PluginProperties;
 import com.googlesource.gerrit.plugins.rabbitmq.config.Properties;
 import com.googlesource.gerrit.plugins.rabbitmq.config.PropertiesFactory;
 import com.googlesource.gerrit.plugins.rabbitmq.config.section.AMQP;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Coalesce;
 import com.googlesource.gerrit.plugins.rabbitmq.config.section.Exchange;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Filter;
 import com.googlesource.gerrit.plugins.rabbitmq.config.section.Gerrit;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Journal;
 import com.googlesource.gerrit.plugins.rabbitmq.config.section.Message;
 import com.googlesource.gerrit.plugins.rabbitmq.config.section.Monitor;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Publish;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Queue;
 import com.googlesource.gerrit.plugins.rabbitmq.config.section.Section;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Spool;
+import com.googlesource.gerrit.plugins.rabbitmq.message.CborPayloadFormat;
 import com.googlesource.gerrit.plugins.rabbitmq.message.GsonProvider;
 import com.googlesource.gerrit.plugins.rabbitmq.message.MessagePublisher;
+import com.googlesource.gerrit.plugins.rabbitmq.message.PayloadFormat;
 import com.googlesource.gerrit.plugins.rabbitmq.message.Publisher;
 import com.googlesource.gerrit.plugins.rabbitmq.message.PublisherFactory;
 import com.googlesource.gerrit.plugins.rabbitmq.session.SessionFactory;
@@ -50,10 +59,20 @@ class Module extends AbstractModule {
 
     Multibinder<Section> sectionBinder = Multibinder.newSetBinder(binder(), Section.class);
     sectionBinder.addBinding().to(AMQP.class);
+    sectionBinder.addBinding().to(Coalesce.class);
     sectionBinder.addBinding().to(Exchange.class);
+    sectionBinder.addBinding().to(Filter.class);
     sectionBinder.addBinding().to(Gerrit.class);
+    sectionBinder.addBinding().to(Journal.class);
     sectionBinder.addBinding().to(Message.class);
     sectionBinder.addBinding().to(Monitor.class);
+    sectionBinder.addBinding().to(Publish.class);
+    sectionBinder.addBinding().to(Queue.class);
+    sectionBinder.addBinding().to(Spool.class);
+
+    MapBinder<String, PayloadFormat> formatBinder =
+        MapBinder.newMapBinder(binder(), String.class, PayloadFormat.class);
+    formatBinder.addBinding(Message.FORMAT_CBOR).to(CborPayloadFormat.class);
 
     install(
         new FactoryModuleBuilder()
@@ -14,31 +14,44 @@
 
 package com.googlesource.gerrit.plugins.rabbitmq.config;
 
+import com.google.common.base.CaseFormat;
 import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.server.events.Event;
 import com.google.gerrit.server.util.time.TimeUtil;
 import com.googlesource.gerrit.plugins.rabbitmq.annotation.MessageHeader;
 import com.googlesource.gerrit.plugins.rabbitmq.config.section.Message;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Queue;
 import com.googlesource.gerrit.plugins.rabbitmq.config.section.Section;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventFields;
 import com.rabbitmq.client.AMQP;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 import org.apache.commons.codec.CharEncoding;
 
 public class AMQProperties {
 
   public static final String EVENT_APPID = "gerrit";
   public static final String CONTENT_TYPE_JSON = "application/json";
+  public static final String EVENT_HEADER_PREFIX = "gerrit-event-";
 
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
-  private final Message message;
   private final Map<String, Object> headers;
+  private final List<String> eventHeaders = new ArrayList<>();
+  private final List<Function<Event, String>> eventFields = new ArrayList<>();
+  private final Map<String, Integer> typePriorities = new HashMap<>();
+  private final AMQP.BasicProperties template;
+  private volatile AMQP.BasicProperties current;
 
   public AMQProperties(PluginProperties properties) {
-    this.message = properties.getSection(Message.class);
-    this.headers = new HashMap<>();
+    Message message = properties.getSection(Message.class);
+    Map<String, Object> headers = new HashMap<>();
     for (Section section : properties.getSections()) {
       for (Field f : section.getClass().getFields()) {
         if (f.isAnnotationPresent(MessageHeader.class)) {
@@ -71,17 +84,107 @@ public class AMQProperties {
         }
       }
     }
+    this.headers = Collections.unmodifiableMap(headers);
+    if (message.header != null) {
+      for (String field : message.header) {
+        Function<Event, String> accessor = EventFields.accessor(field);
+        if (accessor == null) {
+          logger.atWarning().log(
+              "Unknown message header %s, expected one of %s", field, EventFields.names());
+        } else if (!eventFields.contains(accessor)) {
+          eventHeaders.add(
+              EVENT_HEADER_PREFIX + CaseFormat.LOWER_CAMEL.to(CaseFormat.LOWER_HYPHEN, field));
+          eventFields.add(accessor);
+        }
+      }
+    }
+    Queue queue = properties.getSection(Queue.class);
+    if (message.highPriority != null) {
+      for (String type : queue.high) {
+        typePriorities.put(type, message.highPriority);
+      }
+    }
+    if (message.lowPriority != null) {
+      for (String type : queue.low) {
+        typePriorities.put(type, message.lowPriority);
+      }
+    }
+    this.template =
+        new AMQP.BasicProperties.Builder()
+            .appId(EVENT_APPID)
+            .contentEncoding(CharEncoding.UTF_8)
+            .contentType(CONTENT_TYPE_JSON)
+            .deliveryMode(message.deliveryMode)
+            .priority(message.priority)
+            .headers(this.headers)
+            .build();
   }
 
+  /**
+   * Returns the properties of a message published now.
+   *
+   * <p>AMQP timestamps have a resolution of one second, so the same instance is returned until the
+   * second changes.
+   */
   public AMQP.BasicProperties getBasicProperties() {
-    return new AMQP.BasicProperties.Builder()
-        .appId(EVENT_APPID)
-        .contentEncoding(CharEncoding.UTF_8)
-        .contentType(CONTENT_TYPE_JSON)
-        .deliveryMode(message.deliveryMode)
-        .priority(message.priority)
-        .headers(headers)
-        .timestamp(new Date(TimeUtil.nowMs()))
-        .build();
+    long now = TimeUtil.nowMs() / 1000 * 1000;
+    AMQP.BasicProperties props = current;
+    if (props == null || props.getTimestamp().getTime() != now) {
+      props = template.builder().timestamp(new Date(now)).build();
+      current = props;
+    }
+    return props;
+  }
+
+  /** Returns the properties of the message of the event published now, with its headers. */
+  public AMQP.BasicProperties getBasicProperties(Event event) {
+    return getBasicProperties(event, null, null);
+  }
+
+  /**
+   * Returns the properties of the message of the event published now, with its headers.
+   *
+   * @param contentType the type of the body, or null if it is JSON.
+   * @param contentEncoding the encoding of a compressed body, or null if it is not compressed.
+   */
+  public AMQP.BasicProperties getBasicProperties(
+      Event event, String contentType, String contentEncoding) {
+    Integer priority = typePriorities.isEmpty() ? null : typePriorities.get(event.type);
+    if (eventHeaders.isEmpty()
+        && contentType == null
+        && contentEncoding == null
+        && priority == null) {
+      return getBasicProperties();
+    }
+    AMQP.BasicProperties.Builder builder = builder();
+    if (priority != null) {
+      builder.priority(priority);
+    }
+    if (contentType != null) {
+      builder.contentType(contentType);
+    }
+    if (contentEncoding != null) {
+      builder.contentEncoding(contentEncoding);
+    }
+    if (eventHeaders.isEmpty()) {
+      return builder.build();
+    }
+    Map<String, Object> messageHeaders = new HashMap<>(headers.size() + eventHeaders.size() * 2);
+    messageHeaders.putAll(headers);
+    for (int i = 0; i < eventHeaders.size(); i++) {
+      String value = eventFields.get(i).apply(event);
+      if (value != null) {
+        messageHeaders.put(eventHeaders.get(i), value);
+      }
+    }
+    return builder.headers(messageHeaders).build();
+  }
+
+  /**
+   * Returns a builder initialized with the configured properties and the current timestamp, to
+   * which per-event properties can be added.
+   */
+  public AMQP.BasicProperties.Builder builder() {
+    return getBasicProperties().builder();
   }
 }
@@ -15,15 +15,27 @@
 package com.googlesource.gerrit.plugins.rabbitmq.config.section;
 
 import com.googlesource.gerrit.plugins.rabbitmq.annotation.Default;
+import com.googlesource.gerrit.plugins.rabbitmq.annotation.Limit;
 
 public class AMQP implements Section {
 
+  public static final String STRATEGY_FAILOVER = "failover";
+  public static final String STRATEGY_ROUND_ROBIN = "roundRobin";
+  public static final String STRATEGY_LEAST_OUTSTANDING = "leastOutstanding";
+
   @Default("amqp://localhost")
-  public String uri;
+  public String[] uri;
+
+  @Default(STRATEGY_FAILOVER)
+  public String strategy;
 
   @Default("guest")
   public String username;
 
   @Default("guest")
   public String password;
+
+  @Default("2")
+  @Limit(min = 0, max = 64)
+  public Integer channelCacheSize;
 }
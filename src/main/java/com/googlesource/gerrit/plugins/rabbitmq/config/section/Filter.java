@@ -0,0 +1,32 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.config.section;
+
+import com.googlesource.gerrit.plugins.rabbitmq.annotation.Default;
+
+public class Filter implements Section {
+
+  @Default public String[] type;
+
+  @Default public String[] excludeType;
+
+  @Default public String[] project;
+
+  @Default public String[] excludeProject;
+
+  @Default public String[] branch;
+
+  @Default public String[] excludeBranch;
+}
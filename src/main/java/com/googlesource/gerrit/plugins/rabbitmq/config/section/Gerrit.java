@@ -18,6 +18,7 @@ import com.google.gerrit.common.Version;
 import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.inject.Inject;
 import com.googlesource.gerrit.plugins.rabbitmq.annotation.Default;
+import com.googlesource.gerrit.plugins.rabbitmq.annotation.Limit;
 import com.googlesource.gerrit.plugins.rabbitmq.annotation.MessageHeader;
 import org.eclipse.jgit.lib.Config;
 
@@ -48,6 +49,14 @@ public class Gerrit implements Section {
 
   @Default public String listenAs;
 
+  @Default("0")
+  @Limit(min = 0)
+  public Integer listenAsCacheSize;
+
+  @Default("0")
+  @Limit(min = 0)
+  public Integer listenAsCacheTtl;
+
   public String getAMQPUserPassword(String userName) {
     return gerritConfig.getString("AMQP", userName, "password");
   }
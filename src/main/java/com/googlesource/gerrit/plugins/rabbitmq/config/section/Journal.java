@@ -0,0 +1,36 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.config.section;
+
+import com.googlesource.gerrit.plugins.rabbitmq.annotation.Default;
+import com.googlesource.gerrit.plugins.rabbitmq.annotation.Limit;
+
+public class Journal implements Section {
+
+  @Default("false")
+  public Boolean enabled;
+
+  @Default("16777216")
+  @Limit(min = 65536)
+  public Integer segmentSize;
+
+  @Default("64")
+  @Limit(min = 2)
+  public Integer maxSegments;
+
+  @Default("1000")
+  @Limit(min = 10)
+  public Integer syncInterval;
+}
@@ -15,14 +15,38 @@
 package com.googlesource.gerrit.plugins.rabbitmq.config.section;
 
 import com.googlesource.gerrit.plugins.rabbitmq.annotation.Default;
+import com.googlesource.gerrit.plugins.rabbitmq.annotation.Limit;
 
 public class Message implements Section {
 
+  public static final String FORMAT_JSON = "json";
+  public static final String FORMAT_CBOR = "cbor";
+
+  public static final String COMPRESSION_NONE = "none";
+  public static final String COMPRESSION_GZIP = "gzip";
+  public static final String COMPRESSION_DEFLATE = "deflate";
+
   @Default("1")
   public Integer deliveryMode;
 
   @Default("0")
   public Integer priority;
 
+  public Integer highPriority;
+
+  public Integer lowPriority;
+
   @Default public String routingKey;
+
+  @Default public String[] header;
+
+  @Default("json")
+  public String format;
+
+  @Default("none")
+  public String compression;
+
+  @Default("1024")
+  @Limit(min = 0)
+  public Integer compressionThreshold;
 }
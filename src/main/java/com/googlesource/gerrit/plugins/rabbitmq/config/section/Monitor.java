@@ -25,4 +25,15 @@ public class Monitor implements Section {
 
   @Default("15")
   public Integer failureCount;
+
+  @Default("100")
+  @Limit(min = 10)
+  public Integer reconnectDelay;
+
+  @Default("15000")
+  @Limit(min = 100)
+  public Integer maxReconnectDelay;
+
+  @Default("false")
+  public Boolean automaticRecovery;
 }
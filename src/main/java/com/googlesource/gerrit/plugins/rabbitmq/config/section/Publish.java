@@ -0,0 +1,48 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.config.section;
+
+import com.googlesource.gerrit.plugins.rabbitmq.annotation.Default;
+import com.googlesource.gerrit.plugins.rabbitmq.annotation.Limit;
+
+public class Publish implements Section {
+
+  public static final String CONFIRM_NONE = "none";
+  public static final String CONFIRM_BATCH = "batch";
+  public static final String CONFIRM_STREAM = "stream";
+
+  @Default("1")
+  @Limit(min = 1, max = 64)
+  public Integer workers;
+
+  @Default("1")
+  @Limit(min = 1, max = 4096)
+  public Integer batchSize;
+
+  @Default(CONFIRM_NONE)
+  public String confirm;
+
+  @Default("5000")
+  @Limit(min = 100)
+  public Integer confirmTimeout;
+
+  @Default("1024")
+  @Limit(min = 1)
+  public Integer confirmWindow;
+
+  @Default("0")
+  @Limit(min = 0)
+  public Integer rateLimit;
+}
@@ -0,0 +1,46 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.config.section;
+
+import com.googlesource.gerrit.plugins.rabbitmq.annotation.Default;
+import com.googlesource.gerrit.plugins.rabbitmq.annotation.Limit;
+
+public class Queue implements Section {
+
+  public static final String TYPE_LINKED = "linked";
+  public static final String TYPE_RING = "ring";
+
+  public static final String WAIT_BLOCK = "block";
+  public static final String WAIT_SPIN = "spin";
+  public static final String WAIT_YIELD = "yield";
+
+  @Default("16384")
+  @Limit(min = 16)
+  public Integer capacity;
+
+  @Default(TYPE_LINKED)
+  public String type;
+
+  @Default(WAIT_BLOCK)
+  public String waitStrategy;
+
+  @Default public String[] high;
+
+  @Default public String[] low;
+
+  @Default("1024")
+  @Limit(min = 16)
+  public Integer lowCapacity;
+}
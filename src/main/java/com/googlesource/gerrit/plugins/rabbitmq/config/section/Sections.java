@@ -17,6 +17,7 @@ package com.googlesource.gerrit.plugins.rabbitmq.config.section;
 import com.googlesource.gerrit.plugins.rabbitmq.annotation.Default;
 import com.googlesource.gerrit.plugins.rabbitmq.annotation.Limit;
 import java.lang.reflect.Field;
+import java.util.Arrays;
 import java.util.Set;
 import org.eclipse.jgit.lib.Config;
 import org.slf4j.Logger;
@@ -44,6 +45,8 @@ public final class Sections {
             f.set(section, Long.valueOf(a.value()));
           } else if (type == Boolean.class) {
             f.set(section, Boolean.valueOf(a.value()));
+          } else if (type == String[].class) {
+            f.set(section, a.value().isEmpty() ? new String[0] : new String[] {a.value()});
           }
         }
       } catch (IllegalAccessException ex) {
@@ -72,6 +75,9 @@ public final class Sections {
             config.setLong(getName(section), null, f.getName(), Long.class.cast(obj));
           } else if (type == Boolean.class) {
             config.setBoolean(getName(section), null, f.getName(), Boolean.class.cast(obj));
+          } else if (type == String[].class) {
+            config.setStringList(
+                getName(section), null, f.getName(), Arrays.asList(String[].class.cast(obj)));
           }
         }
       } catch (IllegalAccessException ex) {
@@ -99,6 +105,8 @@ public final class Sections {
                 f.set(section, config.getLong(getName(section), null, f.getName(), 0));
               } else if (type == Boolean.class) {
                 f.set(section, config.getBoolean(getName(section), null, f.getName(), false));
+              } else if (type == String[].class) {
+                f.set(section, config.getStringList(getName(section), null, f.getName()));
               }
             }
           } catch (IllegalAccessException ex) {
@@ -0,0 +1,52 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.message;
+
+import com.google.gerrit.server.events.Event;
+import com.google.gson.Gson;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Compact binary format: the same document as the JSON format, encoded in CBOR (RFC 8949).
+ *
+ * <p>The event goes through the same Gson type adapters as for JSON, so field names and values are
+ * identical and consumers can switch with a generic CBOR decoder.
+ */
+@Singleton
+public class CborPayloadFormat implements PayloadFormat {
+  public static final String CONTENT_TYPE_CBOR = "application/cbor";
+
+  private final Gson gson;
+
+  @Inject
+  public CborPayloadFormat(Gson gson) {
+    this.gson = gson;
+  }
+
+  @Override
+  public String getContentType() {
+    return CONTENT_TYPE_CBOR;
+  }
+
+  @Override
+  public void write(Event event, OutputStream out) throws IOException {
+    CborWriter writer = new CborWriter(out);
+    gson.toJson(event, event.getClass(), writer);
+    writer.flush();
+  }
+}
@@ -0,0 +1,280 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.message;
+
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Gson writer producing CBOR instead of JSON.
+ *
+ * <p>Arrays and objects are written with indefinite lengths so that the document can be streamed
+ * without knowing their sizes up front.
+ */
+final class CborWriter extends JsonWriter {
+  private static final Writer UNWRITABLE =
+      new Writer() {
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+          throw new AssertionError();
+        }
+
+        @Override
+        public void flush() {
+          throw new AssertionError();
+        }
+
+        @Override
+        public void close() {
+          throw new AssertionError();
+        }
+      };
+
+  private static final int MAJOR_UNSIGNED = 0;
+  private static final int MAJOR_NEGATIVE = 1;
+  private static final int MAJOR_TEXT = 3;
+  private static final int INDEFINITE_ARRAY = 0x9f;
+  private static final int INDEFINITE_MAP = 0xbf;
+  private static final int BREAK = 0xff;
+  private static final int FALSE = 0xf4;
+  private static final int TRUE = 0xf5;
+  private static final int NULL = 0xf6;
+  private static final int DOUBLE = 0xfb;
+
+  private final OutputStream out;
+  private String pendingName;
+
+  CborWriter(OutputStream out) {
+    super(UNWRITABLE);
+    this.out = out;
+  }
+
+  @Override
+  public JsonWriter beginArray() throws IOException {
+    writePendingName();
+    out.write(INDEFINITE_ARRAY);
+    return this;
+  }
+
+  @Override
+  public JsonWriter endArray() throws IOException {
+    out.write(BREAK);
+    return this;
+  }
+
+  @Override
+  public JsonWriter beginObject() throws IOException {
+    writePendingName();
+    out.write(INDEFINITE_MAP);
+    return this;
+  }
+
+  @Override
+  public JsonWriter endObject() throws IOException {
+    if (pendingName != null) {
+      throw new IllegalStateException("Name without value: " + pendingName);
+    }
+    out.write(BREAK);
+    return this;
+  }
+
+  @Override
+  public JsonWriter name(String name) throws IOException {
+    if (name == null) {
+      throw new NullPointerException("name == null");
+    }
+    if (pendingName != null) {
+      throw new IllegalStateException("Name without value: " + pendingName);
+    }
+    pendingName = name;
+    return this;
+  }
+
+  @Override
+  public JsonWriter value(String value) throws IOException {
+    if (value == null) {
+      return nullValue();
+    }
+    writePendingName();
+    writeText(value);
+    return this;
+  }
+
+  /** Writes raw JSON as a text string holding it, since it is not parsed into CBOR items. */
+  @Override
+  public JsonWriter jsonValue(String value) throws IOException {
+    return value(value);
+  }
+
+  @Override
+  public JsonWriter nullValue() throws IOException {
+    if (pendingName != null && !getSerializeNulls()) {
+      // Same as JSON: drop the member rather than writing a null value.
+      pendingName = null;
+      return this;
+    }
+    writePendingName();
+    out.write(NULL);
+    return this;
+  }
+
+  @Override
+  public JsonWriter value(boolean value) throws IOException {
+    writePendingName();
+    out.write(value ? TRUE : FALSE);
+    return this;
+  }
+
+  @Override
+  public JsonWriter value(Boolean value) throws IOException {
+    if (value == null) {
+      return nullValue();
+    }
+    return value(value.booleanValue());
+  }
+
+  @Override
+  public JsonWriter value(double value) throws IOException {
+    writePendingName();
+    out.write(DOUBLE);
+    long bits = Double.doubleToLongBits(value);
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      out.write((int) (bits >>> shift));
+    }
+    return this;
+  }
+
+  @Override
+  public JsonWriter value(long value) throws IOException {
+    writePendingName();
+    if (value >= 0) {
+      writeHead(MAJOR_UNSIGNED, value);
+    } else {
+      writeHead(MAJOR_NEGATIVE, -1 - value);
+    }
+    return this;
+  }
+
+  @Override
+  public JsonWriter value(Number value) throws IOException {
+    if (value == null) {
+      return nullValue();
+    }
+    if (value instanceof Long
+        || value instanceof Integer
+        || value instanceof Short
+        || value instanceof Byte) {
+      return value(value.longValue());
+    }
+    double d = value.doubleValue();
+    if (d == Math.rint(d) && Math.abs(d) < 0x1p53) {
+      // Lazily parsed numbers and the like holding an integer.
+      return value((long) d);
+    }
+    return value(d);
+  }
+
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (pendingName != null) {
+      throw new IllegalStateException("Name without value: " + pendingName);
+    }
+  }
+
+  private void writePendingName() throws IOException {
+    if (pendingName != null) {
+      writeText(pendingName);
+      pendingName = null;
+    }
+  }
+
+  /** Writes a text string, encoding it to UTF-8 without an intermediate array. */
+  private void writeText(String s) throws IOException {
+    int length = 0;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        length++;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < s.length()
+          && Character.isLowSurrogate(s.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        length++;
+      } else {
+        length += 3;
+      }
+    }
+    writeHead(MAJOR_TEXT, length);
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        out.write(c);
+      } else if (c < 0x800) {
+        out.write(0xc0 | (c >> 6));
+        out.write(0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < s.length()
+          && Character.isLowSurrogate(s.charAt(i + 1))) {
+        int cp = Character.toCodePoint(c, s.charAt(++i));
+        out.write(0xf0 | (cp >> 18));
+        out.write(0x80 | ((cp >> 12) & 0x3f));
+        out.write(0x80 | ((cp >> 6) & 0x3f));
+        out.write(0x80 | (cp & 0x3f));
+      } else if (Character.isSurrogate(c)) {
+        // Lone surrogates are not valid text, they are replaced like the JSON encoder does.
+        out.write('?');
+      } else {
+        out.write(0xe0 | (c >> 12));
+        out.write(0x80 | ((c >> 6) & 0x3f));
+        out.write(0x80 | (c & 0x3f));
+      }
+    }
+  }
+
+  private void writeHead(int major, long value) throws IOException {
+    int type = major << 5;
+    if (value < 24) {
+      out.write(type | (int) value);
+    } else if (value < 0x100) {
+      out.write(type | 24);
+      out.write((int) value);
+    } else if (value < 0x10000) {
+      out.write(type | 25);
+      out.write((int) (value >> 8));
+      out.write((int) value);
+    } else if (value < 0x100000000L) {
+      out.write(type | 26);
+      for (int shift = 24; shift >= 0; shift -= 8) {
+        out.write((int) (value >> shift));
+      }
+    } else {
+      out.write(type | 27);
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        out.write((int) (value >>> shift));
+      }
+    }
+  }
+}
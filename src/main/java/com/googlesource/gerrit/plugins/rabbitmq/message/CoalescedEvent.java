@@ -0,0 +1,59 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.message;
+
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.EventTypes;
+import com.google.gerrit.server.events.ProjectEvent;
+import java.util.List;
+
+/**
+ * Events of the same type and project merged into one message.
+ *
+ * <p>Its type is the type of the merged events followed by {@value #TYPE_SUFFIX}, e.g. {@code
+ * ref-updated-batch}.
+ */
+public class CoalescedEvent extends ProjectEvent {
+  public static final String TYPE_SUFFIX = "-batch";
+
+  public final String eventType;
+  public final Project.NameKey project;
+  public final List<Event> events;
+
+  CoalescedEvent(String eventType, Project.NameKey project, List<Event> events) {
+    super(eventType + TYPE_SUFFIX);
+    this.eventType = eventType;
+    this.project = project;
+    this.events = events;
+    this.eventCreatedOn = events.get(events.size() - 1).eventCreatedOn;
+  }
+
+  /**
+   * Tells whether the type is the one of merged events.
+   *
+   * <p>These types are not registered in {@link EventTypes}, which cannot unregister them when the
+   * plugin is unloaded; the plugin Gson recognizes them instead. Types Gerrit knows take
+   * precedence.
+   */
+  static boolean isCoalescedType(String type) {
+    return type.endsWith(TYPE_SUFFIX) && EventTypes.getClass(type) == null;
+  }
+
+  @Override
+  public Project.NameKey getProjectNameKey() {
+    return project;
+  }
+}
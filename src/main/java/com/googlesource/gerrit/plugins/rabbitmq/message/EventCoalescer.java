@@ -0,0 +1,204 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.message;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.ProjectEvent;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Coalesce;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Holds events of the configured types for a short window to reduce bursts.
+ *
+ * <p>Within a window, an event of a superseded type replaces the held event of the same type for
+ * the same project, ref and change, and events of a merged type for the same project are published
+ * as a single {@link CoalescedEvent}. Held events are keyed in insertion order, so that the entries
+ * whose window has elapsed are always at the head.
+ */
+public final class EventCoalescer {
+  private static final int MIN_TICK = 10;
+
+  private final long window;
+  private final int maxEvents;
+  private final Set<String> supersede;
+  private final Set<String> merge;
+  private final Consumer<EventPayload> downstream;
+  private final IntConsumer coalesced;
+  private final EventSerializer serializer;
+  private final Map<String, Entry> held = new LinkedHashMap<>();
+  private Timer timer;
+
+  private EventCoalescer(
+      Coalesce config,
+      Consumer<EventPayload> downstream,
+      IntConsumer coalesced,
+      EventSerializer serializer) {
+    this.window = config.window;
+    this.maxEvents = config.maxEvents;
+    this.supersede = ImmutableSet.copyOf(config.supersede);
+    this.merge = ImmutableSet.copyOf(config.merge);
+    this.downstream = downstream;
+    this.coalesced = coalesced;
+    this.serializer = serializer;
+  }
+
+  /**
+   * Returns a coalescer handing events over to {@code downstream}, or null if it is disabled.
+   *
+   * <p>{@code coalesced} is told the number of events which are not handed over because they were
+   * superseded or merged into another one.
+   */
+  public static EventCoalescer create(
+      Coalesce config,
+      Consumer<EventPayload> downstream,
+      IntConsumer coalesced,
+      EventSerializer serializer) {
+    if (config == null
+        || config.window == 0
+        || (config.supersede.length == 0 && config.merge.length == 0)) {
+      return null;
+    }
+    return new EventCoalescer(config, downstream, coalesced, serializer);
+  }
+
+  public synchronized void start() {
+    if (timer == null) {
+      timer = new Timer("rabbitmq-coalescer", true);
+      long tick = Math.max(MIN_TICK, window / 4);
+      timer.schedule(
+          new TimerTask() {
+            @Override
+            public void run() {
+              flush(System.currentTimeMillis());
+            }
+          },
+          tick,
+          tick);
+    }
+  }
+
+  /** Stops the timer and hands all held events over. */
+  public void stop() {
+    synchronized (this) {
+      if (timer != null) {
+        timer.cancel();
+        timer = null;
+      }
+    }
+    flush(Long.MAX_VALUE);
+  }
+
+  /**
+   * Holds the event if its type is coalesced.
+   *
+   * @return false if the event is not coalesced and must be handed over by the caller.
+   */
+  public boolean offer(EventPayload payload) {
+    Event event = payload.getEvent();
+    boolean merged = merge.contains(event.type);
+    if (!merged && !supersede.contains(event.type)) {
+      return false;
+    }
+    String project = EventFields.project(event);
+    if (project == null) {
+      return false;
+    }
+    String key =
+        merged
+            ? event.type + '\n' + project
+            : event.type
+                + '\n'
+                + project
+                + '\n'
+                + EventFields.refName(event)
+                + '\n'
+                + EventFields.changeId(event);
+    List<EventPayload> full = null;
+    synchronized (this) {
+      Entry entry = held.get(key);
+      if (entry == null) {
+        held.put(key, new Entry(payload, System.currentTimeMillis() + window, merged));
+      } else if (merged) {
+        entry.payloads.add(payload);
+        coalesced.accept(1);
+        if (entry.payloads.size() >= maxEvents) {
+          held.remove(key);
+          full = entry.payloads;
+        }
+      } else {
+        entry.payloads.set(0, payload);
+        coalesced.accept(1);
+      }
+    }
+    if (full != null) {
+      downstream.accept(merge(full));
+    }
+    return true;
+  }
+
+  private void flush(long now) {
+    List<Entry> due = new ArrayList<>();
+    synchronized (this) {
+      Iterator<Entry> it = held.values().iterator();
+      while (it.hasNext()) {
+        Entry entry = it.next();
+        if (entry.deadline > now) {
+          break;
+        }
+        it.remove();
+        due.add(entry);
+      }
+    }
+    for (Entry entry : due) {
+      downstream.accept(entry.merged ? merge(entry.payloads) : entry.payloads.get(0));
+    }
+  }
+
+  private EventPayload merge(List<EventPayload> payloads) {
+    if (payloads.size() == 1) {
+      return payloads.get(0);
+    }
+    List<Event> events = new ArrayList<>(payloads.size());
+    for (EventPayload payload : payloads) {
+      events.add(payload.getEvent());
+    }
+    Event first = events.get(0);
+    Project.NameKey project = ((ProjectEvent) first).getProjectNameKey();
+    return new EventPayload(new CoalescedEvent(first.type, project, events), serializer);
+  }
+
+  private static class Entry {
+    final List<EventPayload> payloads = new ArrayList<>();
+    final long deadline;
+    final boolean merged;
+
+    Entry(EventPayload payload, long deadline, boolean merged) {
+      this.payloads.add(payload);
+      this.deadline = deadline;
+      this.merged = merged;
+    }
+  }
+}
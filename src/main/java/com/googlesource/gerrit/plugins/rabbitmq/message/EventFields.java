@@ -0,0 +1,152 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.message;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.server.data.AccountAttribute;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.gerrit.server.data.PatchSetAttribute;
+import com.google.gerrit.server.events.ChangeEvent;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.PatchSetCreatedEvent;
+import com.google.gerrit.server.events.PatchSetEvent;
+import com.google.gerrit.server.events.ProjectEvent;
+import com.google.gerrit.server.events.RefEvent;
+import java.util.Set;
+import java.util.function.Function;
+
+/** Reads the fields common to Gerrit events without serializing them. */
+public final class EventFields {
+
+  private static final ImmutableMap<String, Function<Event, String>> ACCESSORS =
+      ImmutableMap.<String, Function<Event, String>>builder()
+          .put("type", event -> event.type)
+          .put("project", EventFields::project)
+          .put("branch", EventFields::branch)
+          .put("ref", EventFields::refName)
+          .put("change", EventFields::changeNumber)
+          .put("changeId", EventFields::changeId)
+          .put("uploader", EventFields::uploader)
+          .build();
+
+  /** Returns the names of the fields which can be read with {@link #accessor(String)}. */
+  public static Set<String> names() {
+    return ACCESSORS.keySet();
+  }
+
+  /** Returns the function reading the named field of an event, or null if it is unknown. */
+  public static Function<Event, String> accessor(String name) {
+    return ACCESSORS.get(name);
+  }
+
+  /** Returns the name of the project the event belongs to, or null if there is none. */
+  public static String project(Event event) {
+    if (event instanceof ProjectEvent) {
+      Project.NameKey project = ((ProjectEvent) event).getProjectNameKey();
+      if (project != null) {
+        return project.get();
+      }
+    }
+    return null;
+  }
+
+  /** Returns the full name of the ref the event belongs to, or null if there is none. */
+  public static String refName(Event event) {
+    if (event instanceof RefEvent) {
+      return ((RefEvent) event).getRefName();
+    }
+    return null;
+  }
+
+  /** Returns the short name of the branch the event belongs to, or null if there is none. */
+  public static String branch(Event event) {
+    String refName = refName(event);
+    if (refName == null) {
+      return null;
+    }
+    return refName.startsWith(RefNames.REFS_HEADS)
+        ? refName.substring(RefNames.REFS_HEADS.length())
+        : refName;
+  }
+
+  /** Returns the number of the change the event belongs to, or null if there is none. */
+  public static String changeNumber(Event event) {
+    if (event instanceof ChangeEvent) {
+      ChangeEvent changeEvent = (ChangeEvent) event;
+      if (changeEvent.change != null) {
+        ChangeAttribute change = changeEvent.change.get();
+        if (change != null) {
+          return Integer.toString(change.number);
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the username, or the email if there is none, of the uploader of the patch set the event
+   * belongs to, or null if there is none.
+   */
+  public static String uploader(Event event) {
+    AccountAttribute uploader = null;
+    if (event instanceof PatchSetCreatedEvent && ((PatchSetCreatedEvent) event).uploader != null) {
+      uploader = ((PatchSetCreatedEvent) event).uploader.get();
+    } else if (event instanceof PatchSetEvent && ((PatchSetEvent) event).patchSet != null) {
+      PatchSetAttribute patchSet = ((PatchSetEvent) event).patchSet.get();
+      if (patchSet != null) {
+        uploader = patchSet.uploader;
+      }
+    }
+    if (uploader == null) {
+      return null;
+    }
+    return uploader.username != null ? uploader.username : uploader.email;
+  }
+
+  /** Returns the Change-Id of the change the event belongs to, or null if there is none. */
+  public static String changeId(Event event) {
+    if (event instanceof ChangeEvent) {
+      ChangeEvent changeEvent = (ChangeEvent) event;
+      if (changeEvent.changeKey != null) {
+        return changeEvent.changeKey.get();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the partition, between 0 and {@code partitions - 1}, of the event. Events of the same
+   * change, or of the same project when they do not belong to a change, share the same partition.
+   */
+  public static int partition(Event event, int partitions) {
+    if (partitions == 1) {
+      return 0;
+    }
+    String project = project(event);
+    if (project == null) {
+      return 0;
+    }
+    int hash = project.hashCode();
+    String changeId = changeId(event);
+    if (changeId != null) {
+      hash = 31 * hash + changeId.hashCode();
+    }
+    return Math.floorMod(hash, partitions);
+  }
+
+  private EventFields() {}
+}
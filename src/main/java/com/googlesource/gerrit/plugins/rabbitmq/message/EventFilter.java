@@ -0,0 +1,195 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.message;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.server.events.Event;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Filter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Decides which events are published, from the {@code [filter]} section.
+ *
+ * <p>The patterns are compiled once: plain names are looked up in a hash set and all the globs and
+ * regular expressions of a list are joined into a single pattern, so that checking an event does
+ * not depend on the number of configured patterns.
+ */
+public final class EventFilter {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final EventFilter ALL = new EventFilter(null, null, null, null, null, null);
+
+  private final Matcher type;
+  private final Matcher excludeType;
+  private final Matcher project;
+  private final Matcher excludeProject;
+  private final Matcher branch;
+  private final Matcher excludeBranch;
+
+  private EventFilter(
+      Matcher type,
+      Matcher excludeType,
+      Matcher project,
+      Matcher excludeProject,
+      Matcher branch,
+      Matcher excludeBranch) {
+    this.type = type;
+    this.excludeType = excludeType;
+    this.project = project;
+    this.excludeProject = excludeProject;
+    this.branch = branch;
+    this.excludeBranch = excludeBranch;
+  }
+
+  public static EventFilter create(Filter filter) {
+    if (filter == null) {
+      return ALL;
+    }
+    EventFilter eventFilter =
+        new EventFilter(
+            Matcher.compile(filter.type),
+            Matcher.compile(filter.excludeType),
+            Matcher.compile(filter.project),
+            Matcher.compile(filter.excludeProject),
+            Matcher.compile(filter.branch),
+            Matcher.compile(filter.excludeBranch));
+    if (eventFilter.type == null
+        && eventFilter.excludeType == null
+        && eventFilter.project == null
+        && eventFilter.excludeProject == null
+        && eventFilter.branch == null
+        && eventFilter.excludeBranch == null) {
+      return ALL;
+    }
+    return eventFilter;
+  }
+
+  /** Returns true if the event is to be published. */
+  public boolean accept(Event event) {
+    if (this == ALL) {
+      return true;
+    }
+    if (!accept(type, excludeType, event.type)) {
+      return false;
+    }
+    if ((project != null || excludeProject != null)
+        && !accept(project, excludeProject, EventFields.project(event))) {
+      return false;
+    }
+    if ((branch != null || excludeBranch != null)
+        && !accept(branch, excludeBranch, EventFields.branch(event))) {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * A value is accepted when it matches the included patterns, if any, and none of the excluded
+   * ones. A missing value never matches.
+   */
+  private static boolean accept(Matcher include, Matcher exclude, String value) {
+    if (include != null && !include.matches(value)) {
+      return false;
+    }
+    return exclude == null || !exclude.matches(value);
+  }
+
+  /** Matches names against a list of plain names, globs and regular expressions. */
+  private static final class Matcher {
+    private final Set<String> names;
+    private final Pattern pattern;
+
+    private Matcher(Set<String> names, Pattern pattern) {
+      this.names = names;
+      this.pattern = pattern;
+    }
+
+    /**
+     * Compiles the patterns, or returns null if there is none. Patterns starting with {@code ^} are
+     * regular expressions; {@code *} and {@code ?} are wildcards in the others.
+     */
+    static Matcher compile(String[] patterns) {
+      if (patterns == null) {
+        return null;
+      }
+      ImmutableSet.Builder<String> names = ImmutableSet.builder();
+      List<String> regexes = new ArrayList<>();
+      for (String p : patterns) {
+        if (p == null || p.isEmpty()) {
+          continue;
+        }
+        if (p.startsWith("^")) {
+          try {
+            Pattern.compile(p);
+            regexes.add(p);
+          } catch (PatternSyntaxException e) {
+            logger.atWarning().log("Ignoring invalid filter pattern %s: %s", p, e.getMessage());
+          }
+        } else if (p.indexOf('*') >= 0 || p.indexOf('?') >= 0) {
+          regexes.add(globToRegex(p));
+        } else {
+          names.add(p);
+        }
+      }
+      Set<String> nameSet = names.build();
+      if (nameSet.isEmpty() && regexes.isEmpty()) {
+        return null;
+      }
+      Pattern pattern = null;
+      if (!regexes.isEmpty()) {
+        StringBuilder joined = new StringBuilder();
+        for (String regex : regexes) {
+          if (joined.length() > 0) {
+            joined.append('|');
+          }
+          joined.append("(?:").append(regex).append(')');
+        }
+        pattern = Pattern.compile(joined.toString());
+      }
+      return new Matcher(nameSet, pattern);
+    }
+
+    private static String globToRegex(String glob) {
+      StringBuilder regex = new StringBuilder("^");
+      int start = 0;
+      for (int i = 0; i < glob.length(); i++) {
+        char c = glob.charAt(i);
+        if (c == '*' || c == '?') {
+          if (i > start) {
+            regex.append(Pattern.quote(glob.substring(start, i)));
+          }
+          regex.append(c == '*' ? ".*" : ".");
+          start = i + 1;
+        }
+      }
+      if (start < glob.length()) {
+        regex.append(Pattern.quote(glob.substring(start)));
+      }
+      return regex.append('$').toString();
+    }
+
+    boolean matches(String value) {
+      if (value == null) {
+        return false;
+      }
+      return names.contains(value) || (pattern != null && pattern.matcher(value).matches());
+    }
+  }
+}
@@ -0,0 +1,95 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.message;
+
+import com.google.gerrit.server.events.Event;
+
+/**
+ * Event handed to publishers together with its serialized body.
+ *
+ * <p>The body is serialized lazily on first access and then shared by every publisher that receives
+ * the same payload. The returned array must not be modified.
+ *
+ * <p>The body is JSON. The last encoding in another format is kept as well, so that publishers
+ * using the same format share it too.
+ */
+public final class EventPayload {
+  private final Event event;
+  private final EventSerializer serializer;
+  private final long createdAt = System.nanoTime();
+  private volatile byte[] body;
+  private volatile Encoded encoded;
+
+  EventPayload(Event event, EventSerializer serializer) {
+    this(event, null, serializer);
+  }
+
+  EventPayload(Event event, byte[] body, EventSerializer serializer) {
+    this.event = event;
+    this.body = body;
+    this.serializer = serializer;
+  }
+
+  public Event getEvent() {
+    return event;
+  }
+
+  public String getType() {
+    return event.getType();
+  }
+
+  /** Returns the {@link System#nanoTime()} at which the payload was created. */
+  public long getCreatedAt() {
+    return createdAt;
+  }
+
+  public byte[] getBody() {
+    byte[] b = body;
+    if (b != null) {
+      return b;
+    }
+    synchronized (this) {
+      if (body == null) {
+        body = serializer.serialize(event);
+      }
+      return body;
+    }
+  }
+
+  /** Returns the body encoded in the given format. */
+  public byte[] getBody(PayloadFormat format) {
+    Encoded e = encoded;
+    if (e == null || e.format != format) {
+      synchronized (this) {
+        e = encoded;
+        if (e == null || e.format != format) {
+          e = new Encoded(format, serializer.serialize(event, format));
+          encoded = e;
+        }
+      }
+    }
+    return e.body;
+  }
+
+  private static class Encoded {
+    final PayloadFormat format;
+    final byte[] body;
+
+    Encoded(PayloadFormat format, byte[] body) {
+      this.format = format;
+      this.body = body;
+    }
+  }
+}
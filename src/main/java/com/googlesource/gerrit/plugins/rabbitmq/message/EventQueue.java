@@ -0,0 +1,54 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.message;
+
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Queue;
+import java.util.Collection;
+
+/** Bounded queue handing events from Gerrit's event dispatch over to the publisher thread. */
+public interface EventQueue {
+
+  static EventQueue create(Queue config) {
+    if (config.high.length > 0 || config.low.length > 0) {
+      return new LaneEventQueue(
+          config.high,
+          config.low,
+          create(config, config.capacity),
+          create(config, config.capacity),
+          create(config, config.lowCapacity));
+    }
+    return create(config, config.capacity);
+  }
+
+  static EventQueue create(Queue config, int capacity) {
+    if (Queue.TYPE_RING.equals(config.type)) {
+      return new RingEventQueue(capacity, config.waitStrategy);
+    }
+    return new LinkedEventQueue(capacity);
+  }
+
+  /** Adds the event if there is room for it, without waiting. */
+  boolean offer(EventPayload payload);
+
+  /** Removes the head of the queue, waiting for an event if needed. */
+  EventPayload take() throws InterruptedException;
+
+  /** Removes at most {@code max} events without waiting and adds them to the collection. */
+  int drainTo(Collection<? super EventPayload> c, int max);
+
+  boolean isEmpty();
+
+  int size();
+}
@@ -0,0 +1,172 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.message;
+
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer0;
+import com.google.gerrit.server.events.Event;
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/** Serializes events once and shares the resulting body among all publishers. */
+@Singleton
+public class EventSerializer {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private final Gson gson;
+  private final Counter0 serializedCount;
+  private final Counter0 reusedCount;
+  private final Timer0 latency;
+  private final AtomicReference<EventPayload> last = new AtomicReference<>();
+  private final ThreadLocal<PayloadBuffer> buffers = ThreadLocal.withInitial(PayloadBuffer::new);
+
+  @Inject
+  public EventSerializer(Gson gson, MetricMaker metricMaker) {
+    this.gson = gson;
+    this.serializedCount =
+        metricMaker.newCounter(
+            "serialization/serialized_count",
+            new Description("Events serialized into a message body").setRate().setUnit("events"));
+    this.reusedCount =
+        metricMaker.newCounter(
+            "serialization/reused_count",
+            new Description("Events handed to another group of publishers without serializing them")
+                .setRate()
+                .setUnit("events"));
+    this.latency =
+        metricMaker.newTimer(
+            "serialization/latency",
+            new Description("Time to serialize an event into a message body")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS));
+  }
+
+  /**
+   * Returns the payload for the given event.
+   *
+   * <p>Gerrit hands the same event instance to every listener in turn, so consecutive calls for the
+   * same event return the same payload and the event is serialized only once.
+   */
+  public EventPayload wrap(Event event) {
+    EventPayload payload = last.get();
+    if (payload == null || payload.getEvent() != event) {
+      payload = new EventPayload(event, this);
+      last.set(payload);
+    } else {
+      reusedCount.increment();
+    }
+    return payload;
+  }
+
+  /**
+   * Serializes the event into UTF-8 encoded JSON.
+   *
+   * <p>The JSON is written straight into a byte buffer kept by the calling thread, so that the only
+   * allocation is the returned array.
+   */
+  byte[] serialize(Event event) {
+    serializedCount.increment();
+    PayloadBuffer buffer = buffers.get();
+    long start = System.nanoTime();
+    try {
+      gson.toJson(event, event.getClass(), gson.newJsonWriter(buffer.writer));
+      buffer.writer.flush();
+      byte[] body = buffer.toByteArray();
+      buffer.recycle();
+      return body;
+    } catch (IOException e) {
+      buffers.remove();
+      throw new JsonIOException(e);
+    } catch (RuntimeException e) {
+      // The writer may hold part of the failed event.
+      buffers.remove();
+      throw e;
+    } finally {
+      latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  /** Encodes the event in the given format, into a byte buffer kept by the calling thread. */
+  byte[] serialize(Event event, PayloadFormat format) {
+    serializedCount.increment();
+    PayloadBuffer buffer = buffers.get();
+    long start = System.nanoTime();
+    try {
+      format.write(event, buffer);
+      byte[] body = buffer.toByteArray();
+      buffer.recycle();
+      return body;
+    } catch (IOException e) {
+      buffers.remove();
+      throw new JsonIOException(e);
+    } catch (RuntimeException e) {
+      buffers.remove();
+      throw e;
+    } finally {
+      latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  /**
+   * Restores the payload of an event from its serialized body.
+   *
+   * @return the payload, or null if the body cannot be turned back into an event.
+   */
+  public EventPayload deserialize(byte[] body) {
+    try {
+      Event event = gson.fromJson(new String(body, StandardCharsets.UTF_8), Event.class);
+      if (event != null) {
+        return new EventPayload(event, body, this);
+      }
+    } catch (JsonParseException e) {
+      logger.atWarning().withCause(e).log("Cannot restore event");
+    }
+    return null;
+  }
+
+  /** Growable byte buffer with a UTF-8 writer on top, reused by one thread. */
+  private static class PayloadBuffer extends ByteArrayOutputStream {
+    private static final int INITIAL_SIZE = 8192;
+    private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+
+    final Writer writer = new OutputStreamWriter(this, StandardCharsets.UTF_8);
+
+    PayloadBuffer() {
+      super(INITIAL_SIZE);
+    }
+
+    /** Empties the buffer, releasing it if an unusually large event made it grow. */
+    void recycle() {
+      if (buf.length > MAX_RETAINED_SIZE) {
+        buf = new byte[INITIAL_SIZE];
+      }
+      reset();
+    }
+  }
+}
@@ -15,20 +15,95 @@
 package com.googlesource.gerrit.plugins.rabbitmq.message;
 
 import com.google.common.base.Supplier;
+import com.google.gerrit.entities.Change;
 import com.google.gerrit.entities.Project;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.EventDeserializer;
 import com.google.gerrit.server.events.ProjectNameKeyAdapter;
+import com.google.gerrit.server.events.SupplierDeserializer;
 import com.google.gerrit.server.events.SupplierSerializer;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
 import com.google.inject.Provider;
+import java.lang.reflect.Type;
 
+/**
+ * Provides the Gson writing the message bodies.
+ *
+ * <p>It also reads them back into events, e.g. from the spool, so that the bodies written to disk
+ * are restored with the same Gson that wrote them.
+ */
 public class GsonProvider implements Provider<Gson> {
 
   @Override
   public Gson get() {
     return new GsonBuilder()
+        .registerTypeAdapter(Event.class, new EventAdapter())
         .registerTypeAdapter(Supplier.class, new SupplierSerializer())
+        .registerTypeAdapter(Supplier.class, new SupplierDeserializer())
+        .registerTypeAdapter(Change.Key.class, new ChangeKeyAdapter())
         .registerTypeAdapter(Project.NameKey.class, new ProjectNameKeyAdapter())
         .create();
   }
+
+  /**
+   * Reads events like Gerrit does, as well as the events merged by the coalescer.
+   *
+   * <p>Events held in fields of type {@link Event}, like the merged ones, are written with all the
+   * fields of their actual class.
+   */
+  private static class EventAdapter implements JsonSerializer<Event>, JsonDeserializer<Event> {
+    private final EventDeserializer delegate = new EventDeserializer();
+
+    @Override
+    public JsonElement serialize(Event src, Type typeOfSrc, JsonSerializationContext context) {
+      return context.serialize(src, src.getClass());
+    }
+
+    @Override
+    public Event deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) {
+      if (json.isJsonObject()) {
+        JsonElement type = json.getAsJsonObject().get("type");
+        if (type != null
+            && type.isJsonPrimitive()
+            && CoalescedEvent.isCoalescedType(type.getAsString())) {
+          return context.deserialize(json, CoalescedEvent.class);
+        }
+      }
+      return delegate.deserialize(json, typeOfT, context);
+    }
+  }
+
+  /**
+   * Writes the Change-Id as {@code {"key": "I..."}}, as the message bodies always had it, and reads
+   * it back from this form or from a plain string, the way Gerrit writes it.
+   */
+  private static class ChangeKeyAdapter
+      implements JsonSerializer<Change.Key>, JsonDeserializer<Change.Key> {
+    @Override
+    public JsonElement serialize(Change.Key src, Type typeOfSrc, JsonSerializationContext context) {
+      JsonObject json = new JsonObject();
+      json.addProperty("key", src.get());
+      return json;
+    }
+
+    @Override
+    public Change.Key deserialize(
+        JsonElement json, Type typeOfT, JsonDeserializationContext context) {
+      if (json.isJsonObject()) {
+        json = json.getAsJsonObject().get("key");
+      }
+      if (json == null || !json.isJsonPrimitive() || !json.getAsJsonPrimitive().isString()) {
+        throw new JsonParseException("Change-Id is not a string: " + json);
+      }
+      return Change.key(json.getAsString());
+    }
+  }
 }
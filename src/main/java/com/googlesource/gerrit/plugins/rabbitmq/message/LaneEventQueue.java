@@ -0,0 +1,100 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.message;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+
+/**
+ * {@link EventQueue} made of a high, a normal and a low priority lane, chosen by event type.
+ *
+ * <p>Events are taken from the high priority lane first and from the low priority lane last, so
+ * that under pressure the low priority lane, which is also the smallest one, fills up and sheds its
+ * events first. Events of the same lane keep their order. A semaphore counts the events of all the
+ * lanes so that the consumer can wait on all of them at once.
+ */
+class LaneEventQueue implements EventQueue {
+  private final Set<String> highTypes;
+  private final Set<String> lowTypes;
+  private final EventQueue[] lanes;
+  private final Semaphore available = new Semaphore(0);
+
+  LaneEventQueue(
+      String[] highTypes, String[] lowTypes, EventQueue high, EventQueue normal, EventQueue low) {
+    this.highTypes = ImmutableSet.copyOf(highTypes);
+    this.lowTypes = ImmutableSet.copyOf(lowTypes);
+    this.lanes = new EventQueue[] {high, normal, low};
+  }
+
+  private EventQueue laneOf(EventPayload payload) {
+    String type = payload.getType();
+    if (highTypes.contains(type)) {
+      return lanes[0];
+    }
+    if (lowTypes.contains(type)) {
+      return lanes[2];
+    }
+    return lanes[1];
+  }
+
+  @Override
+  public boolean offer(EventPayload payload) {
+    if (!laneOf(payload).offer(payload)) {
+      return false;
+    }
+    available.release();
+    return true;
+  }
+
+  @Override
+  public EventPayload take() throws InterruptedException {
+    available.acquire();
+    List<EventPayload> taken = new ArrayList<>(1);
+    drainLanes(taken, 1);
+    return taken.get(0);
+  }
+
+  @Override
+  public int drainTo(Collection<? super EventPayload> c, int max) {
+    int n = drainLanes(c, max);
+    // Offered events are counted right after being added to their lane.
+    available.acquireUninterruptibly(n);
+    return n;
+  }
+
+  private int drainLanes(Collection<? super EventPayload> c, int max) {
+    int n = 0;
+    for (EventQueue lane : lanes) {
+      if (n < max) {
+        n += lane.drainTo(c, max - n);
+      }
+    }
+    return n;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return lanes[0].isEmpty() && lanes[1].isEmpty() && lanes[2].isEmpty();
+  }
+
+  @Override
+  public int size() {
+    return lanes[0].size() + lanes[1].size() + lanes[2].size();
+  }
+}
@@ -0,0 +1,52 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.message;
+
+import java.util.Collection;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/** {@link EventQueue} backed by a {@link LinkedBlockingQueue}. */
+class LinkedEventQueue implements EventQueue {
+  private final LinkedBlockingQueue<EventPayload> queue;
+
+  LinkedEventQueue(int capacity) {
+    queue = new LinkedBlockingQueue<>(capacity);
+  }
+
+  @Override
+  public boolean offer(EventPayload payload) {
+    return queue.offer(payload);
+  }
+
+  @Override
+  public EventPayload take() throws InterruptedException {
+    return queue.take();
+  }
+
+  @Override
+  public int drainTo(Collection<? super EventPayload> c, int max) {
+    return queue.drainTo(c, max);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return queue.isEmpty();
+  }
+
+  @Override
+  public int size() {
+    return queue.size();
+  }
+}
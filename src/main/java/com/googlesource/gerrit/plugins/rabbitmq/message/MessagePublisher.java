@@ -14,151 +14,198 @@
 
 package com.googlesource.gerrit.plugins.rabbitmq.message;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.gerrit.extensions.annotations.PluginData;
 import com.google.gerrit.extensions.events.LifecycleListener;
 import com.google.gerrit.server.events.Event;
-import com.google.gerrit.server.events.EventListener;
-import com.google.gson.Gson;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import com.googlesource.gerrit.plugins.rabbitmq.config.Properties;
 import com.googlesource.gerrit.plugins.rabbitmq.config.section.AMQP;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Coalesce;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Filter;
 import com.googlesource.gerrit.plugins.rabbitmq.config.section.Gerrit;
-import com.googlesource.gerrit.plugins.rabbitmq.config.section.Monitor;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Journal;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Message;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Publish;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Queue;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Spool;
 import com.googlesource.gerrit.plugins.rabbitmq.session.Session;
 import com.googlesource.gerrit.plugins.rabbitmq.session.SessionFactoryProvider;
+import com.googlesource.gerrit.plugins.rabbitmq.spool.EventJournal;
+import com.googlesource.gerrit.plugins.rabbitmq.spool.EventSpool;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class MessagePublisher implements Publisher, LifecycleListener {
 
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
-  private static final int MAX_EVENTS = 16384;
-  private static final int MONITOR_FIRSTTIME_DELAY = 15000;
+  private static final String SPOOL_DIR = "spool";
+  private static final String JOURNAL_DIR = "journal";
   private static final String END_OF_STREAM = "END-OF-STREAM_$F7;XTSUQ(Dv#N6]g+gd,,uzRp%G-P";
-  private static final Event EOS = new Event(END_OF_STREAM) {};
+  private static final EventPayload EOS = new EventPayload(new Event(END_OF_STREAM) {}, null);
 
   private final Session session;
   private final Properties properties;
-  private final Gson gson;
-  private final Timer monitorTimer = new Timer();
-  private final LinkedBlockingQueue<Event> queue = new LinkedBlockingQueue<>(MAX_EVENTS);
+  private final EventFilter filter;
+  private final EventCoalescer coalescer;
+  private final RateLimiter rateLimiter;
+  private final Set<String> lowPriorityTypes;
+  private final Timer journalTimer = new Timer();
+  private final Worker[] workers;
   private final Object sessionMon = new Object();
-  private EventListener eventListener;
-  private GracefullyCancelableRunnable publisher;
-  private Thread publisherThread;
+  private final EventSpool spool;
+  private final EventJournal journal;
+  private final PublisherMetrics.Recorder recorder;
+  private int lostEventCount = 0;
 
   @Inject
   public MessagePublisher(
       @Assisted final Properties properties,
+      @PluginData final File pluginData,
       SessionFactoryProvider sessionFactoryProvider,
-      Gson gson) {
+      EventSerializer serializer,
+      PublisherMetrics metrics,
+      Map<String, PayloadFormat> formats) {
     this.session = sessionFactoryProvider.get().create(properties);
+    String format = properties.getSection(Message.class).format;
+    if (!Message.FORMAT_JSON.equals(format)) {
+      if (formats.containsKey(format)) {
+        session.setPayloadFormat(formats.get(format));
+      } else {
+        logger.atWarning().log(
+            "Unknown message format %s, expected %s or one of %s",
+            format, Message.FORMAT_JSON, formats.keySet());
+      }
+    }
     this.properties = properties;
-    this.gson = gson;
-    this.eventListener =
-        new EventListener() {
-          private int lostEventCount = 0;
-
-          @Override
-          public void onEvent(Event event) {
-            if (!publisherThread.isAlive()) {
-              ensurePublisherThreadStarted();
-            }
-
-            if (queue.offer(event)) {
-              if (lostEventCount > 0) {
-                logger.atWarning().log(
-                    "Event queue is no longer full, %d events were lost", lostEventCount);
-                lostEventCount = 0;
-              }
-            } else {
-              if (lostEventCount++ % 10 == 0) {
-                logger.atSevere().log("Event queue is full, lost %d event(s)", lostEventCount);
-              }
-            }
-          }
-        };
-    this.publisher =
-        new GracefullyCancelableRunnable() {
-
-          volatile boolean canceled = false;
-
-          @Override
-          public void run() {
-            while (!canceled) {
-              try {
-                Event event = queue.take();
-                if (event.getType().equals(END_OF_STREAM)) {
-                  continue;
-                }
-                while (!isConnected() && !canceled) {
-                  synchronized (sessionMon) {
-                    sessionMon.wait(1000);
-                  }
-                }
-                if (!publishEvent(event) && !queue.offer(event)) {
-                  logger.atSevere().log("Event lost: %s", gson.toJson(event));
-                }
-              } catch (InterruptedException e) {
-                logger.atWarning().withCause(e).log(
-                    "Interupted while waiting for event or connection.");
-              }
-            }
-          }
-
-          @Override
-          public void cancel() {
-            canceled = true;
-            if (queue.isEmpty()) {
-              queue.offer(EOS);
-            }
-          }
-
-          @Override
-          public String toString() {
-            return "Rabbitmq publisher: "
-                + properties.getSection(Gerrit.class).listenAs
-                + "-"
-                + properties.getSection(AMQP.class).uri;
-          }
-        };
+    this.filter = EventFilter.create(properties.getSection(Filter.class));
+    this.coalescer =
+        EventCoalescer.create(
+            properties.getSection(Coalesce.class), this::enqueue, this::coalesced, serializer);
+    Queue queueConfig = properties.getSection(Queue.class);
+    if ((queueConfig.high.length > 0 || queueConfig.low.length > 0)
+        && (Queue.TYPE_RING.equals(queueConfig.type)
+            || !Queue.WAIT_BLOCK.equals(queueConfig.waitStrategy))) {
+      logger.atWarning().log(
+          "With queue.high or queue.low, the publisher thread blocks until an event is added to"
+              + " any lane: queue.type %s only applies to each lane and queue.waitStrategy %s is"
+              + " ignored",
+          queueConfig.type, queueConfig.waitStrategy);
+    }
+    this.lowPriorityTypes = ImmutableSet.copyOf(queueConfig.low);
+    int rateLimit = properties.getSection(Publish.class).rateLimit;
+    this.rateLimiter = rateLimit > 0 ? RateLimiter.create(rateLimit) : null;
+    this.workers = new Worker[properties.getSection(Publish.class).workers];
+    for (int i = 0; i < workers.length; i++) {
+      workers[i] = new Worker(i, EventQueue.create(queueConfig));
+    }
+    this.recorder = metrics.register(properties.getName(), this::queueDepth);
+    session.setMetrics(recorder);
+    Spool spoolConfig = properties.getSection(Spool.class);
+    if (spoolConfig.enabled) {
+      this.spool =
+          new EventSpool(
+              pluginData.toPath().resolve(SPOOL_DIR).resolve(properties.getName()),
+              spoolConfig.segmentSize,
+              spoolConfig.maxSegments,
+              serializer);
+    } else {
+      this.spool = null;
+    }
+    Journal journalConfig = properties.getSection(Journal.class);
+    if (journalConfig.enabled) {
+      this.journal =
+          new EventJournal(
+              pluginData.toPath().resolve(JOURNAL_DIR).resolve(properties.getName()),
+              journalConfig.segmentSize,
+              journalConfig.maxSegments,
+              serializer);
+    } else {
+      this.journal = null;
+    }
+    this.session.setConfirmedHandler(this::confirmed);
+    this.session.setConnectedHandler(this::onConnected);
+    this.session.setRejectedHandler(
+        rejected -> {
+          logger.atWarning().log("Requeuing %d unconfirmed event(s)", rejected.size());
+          recorder.requeued(rejected.size());
+          reject(rejected);
+        });
   }
 
   @Override
   public void start() {
-    ensurePublisherThreadStarted();
-    if (!isConnected()) {
-      connect();
-      monitorTimer.schedule(
+    if (spool != null) {
+      try {
+        spool.open();
+      } catch (IOException e) {
+        logger.atSevere().withCause(e).log("Cannot open spool, events will not be spooled");
+      }
+    }
+    if (journal != null) {
+      try {
+        List<EventPayload> restored = journal.open();
+        recorder.enqueued(restored.size());
+        requeue(restored);
+      } catch (IOException e) {
+        logger.atSevere().withCause(e).log("Cannot open journal, events will not be journaled");
+      }
+      int syncInterval = properties.getSection(Journal.class).syncInterval;
+      journalTimer.schedule(
           new TimerTask() {
             @Override
             public void run() {
-              if (!isConnected()) {
-                logger.atInfo().log("#start: try to reconnect");
-                connect();
-              }
+              journal.sync();
             }
           },
-          MONITOR_FIRSTTIME_DELAY,
-          properties.getSection(Monitor.class).interval);
+          syncInterval,
+          syncInterval);
+    }
+    for (Worker worker : workers) {
+      worker.ensureStarted();
+    }
+    if (coalescer != null) {
+      coalescer.start();
+    }
+    if (session.connect()) {
+      onConnected();
     }
   }
 
   @Override
   public void stop() {
-    monitorTimer.cancel();
-    publisher.cancel();
-    if (publisherThread != null) {
-      try {
-        publisherThread.join();
-      } catch (InterruptedException e) {
-        // Do nothing
-      }
+    if (coalescer != null) {
+      coalescer.stop();
+    }
+    journalTimer.cancel();
+    for (Worker worker : workers) {
+      worker.cancel();
+    }
+    for (Worker worker : workers) {
+      worker.join();
     }
     session.disconnect();
+    if (spool != null) {
+      spool.close();
+    }
+    if (journal != null) {
+      journal.close();
+    }
+    recorder.remove();
   }
 
   @Override
@@ -172,34 +219,350 @@ public class MessagePublisher implements Publisher, LifecycleListener {
   }
 
   @Override
-  public EventListener getEventListener() {
-    return this.eventListener;
+  public void onEvent(EventPayload payload) {
+    if (!filter.accept(payload.getEvent())) {
+      recorder.filtered();
+      return;
+    }
+    if (coalescer != null && coalescer.offer(payload)) {
+      return;
+    }
+    enqueue(payload);
+  }
+
+  private void enqueue(EventPayload payload) {
+    Worker worker = workerFor(payload);
+    Thread thread = worker.thread;
+    if (thread == null || !thread.isAlive()) {
+      worker.ensureStarted();
+    }
+
+    if (journal != null) {
+      journal.append(payload);
+    }
+    if (spool != null && spool.appendIfActive(payload)) {
+      recorder.enqueued(1);
+      workers[0].wakeUp();
+      return;
+    }
+    if (spool != null && !isWritable() && spool(payload)) {
+      recorder.enqueued(1);
+      return;
+    }
+    if (worker.queue.offer(payload)) {
+      recorder.enqueued(1);
+      if (lostEventCount > 0) {
+        logger.atWarning().log(
+            "Event queue is no longer full, %d events were lost", lostEventCount);
+        lostEventCount = 0;
+      }
+    } else if (spool != null && !lowPriorityTypes.contains(payload.getType()) && spool(payload)) {
+      recorder.enqueued(1);
+      logger.atFine().log("Event queue is full, event spooled");
+    } else {
+      // Low priority events are shed rather than spooled, as the spool would hold back the
+      // events of the other lanes until it is drained.
+      if (journal != null) {
+        journal.release(payload);
+      }
+      recorder.dropped(1);
+      if (lostEventCount++ % 10 == 0) {
+        logger.atSevere().log("Event queue is full, lost %d event(s)", lostEventCount);
+      }
+    }
+  }
+
+  private void coalesced(int count) {
+    recorder.coalesced(count);
+  }
+
+  /** Counts the events the broker accepted and drops them from the journal and the spool. */
+  private void confirmed(List<EventPayload> published) {
+    recorder.published(published.size());
+    release(published);
+  }
+
+  /** Drops the events from the journal and the spool. */
+  private void release(List<EventPayload> published) {
+    for (EventPayload payload : published) {
+      if (journal != null) {
+        journal.release(payload);
+      }
+      if (spool != null) {
+        spool.release(payload);
+      }
+    }
+  }
+
+  private Worker workerFor(EventPayload payload) {
+    return workers[EventFields.partition(payload.getEvent(), workers.length)];
+  }
+
+  private boolean spool(EventPayload payload) {
+    if (!spool.append(payload)) {
+      return false;
+    }
+    if (journal != null) {
+      // The spool keeps the event from now on.
+      journal.release(payload);
+    }
+    // The first worker replays the spool.
+    workers[0].wakeUp();
+    return true;
   }
 
   private boolean isConnected() {
     return session != null && session.isOpen();
   }
 
-  private boolean publishEvent(Event event) {
-    return session.publish(gson.toJson(event));
+  /** Returns false when events would wait for the connection, so that they are spooled at once. */
+  private boolean isWritable() {
+    return isConnected() && !session.isBlocked();
   }
 
-  private void connect() {
-    if (!isConnected() && session.connect()) {
+  /**
+   * Puts events that could not be published back in front of the queue of their worker, keeping
+   * their order.
+   */
+  private void requeue(List<EventPayload> failed) {
+    List<List<EventPayload>> partitions = partition(failed);
+    for (int i = 0; i < workers.length; i++) {
+      workers[i].requeue(partitions.get(i));
+    }
+  }
+
+  /**
+   * Hands events rejected by the broker to their workers, which requeue them on their own thread
+   * ahead of the events that failed since.
+   */
+  private void reject(List<EventPayload> rejected) {
+    List<List<EventPayload>> partitions = partition(rejected);
+    for (int i = 0; i < workers.length; i++) {
+      workers[i].reject(partitions.get(i));
+    }
+  }
+
+  private List<List<EventPayload>> partition(List<EventPayload> payloads) {
+    if (workers.length == 1) {
+      return Collections.singletonList(payloads);
+    }
+    List<List<EventPayload>> partitions = new ArrayList<>(workers.length);
+    for (int i = 0; i < workers.length; i++) {
+      partitions.add(new ArrayList<>());
+    }
+    for (EventPayload payload : payloads) {
+      partitions.get(EventFields.partition(payload.getEvent(), workers.length)).add(payload);
+    }
+    return partitions;
+  }
+
+  /** Returns the number of events waiting in the queues of the workers. */
+  private long queueDepth() {
+    long depth = 0;
+    for (Worker worker : workers) {
+      depth += worker.queue.size();
+    }
+    return depth;
+  }
+
+  /** Returns true if no worker other than the first one has queued events. */
+  private boolean othersIdle() {
+    for (int i = 1; i < workers.length; i++) {
+      if (!workers[i].queue.isEmpty()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void onConnected() {
+    synchronized (sessionMon) {
+      sessionMon.notifyAll();
+    }
+    if (spool != null) {
+      // Wake up the first worker so that it replays the spool.
+      workers[0].wakeUp();
+    }
+  }
+
+  /**
+   * Publishes the events of one partition on its own channel.
+   *
+   * <p>Events are assigned to workers by {@link EventFields#partition}, so that the events of a
+   * change are published in order while different changes are published in parallel.
+   */
+  private class Worker implements GracefullyCancelableRunnable {
+    final int index;
+    final EventQueue queue;
+    final Deque<EventPayload> retry = new ArrayDeque<>();
+    /** Events rejected on the listener thread, waiting to be put in front of {@link #retry}. */
+    final ConcurrentLinkedQueue<List<EventPayload>> rejected = new ConcurrentLinkedQueue<>();
+
+    volatile boolean canceled = false;
+    volatile Thread thread;
+
+    Worker(int index, EventQueue queue) {
+      this.index = index;
+      this.queue = queue;
+    }
+
+    @Override
+    public void run() {
+      while (!canceled) {
+        List<EventPayload> batch = Collections.emptyList();
+        try {
+          batch = nextBatch();
+          if (batch.isEmpty()) {
+            continue;
+          }
+          synchronized (sessionMon) {
+            // Woken up by onConnected() or cancel().
+            while (!isConnected() && !canceled) {
+              sessionMon.wait();
+            }
+          }
+          long now = System.nanoTime();
+          for (EventPayload payload : batch) {
+            recorder.queued(now - payload.getCreatedAt());
+          }
+          if (rateLimiter != null) {
+            rateLimiter.acquire(batch.size());
+          }
+          long start = System.nanoTime();
+          List<EventPayload> failed = session.publish(index, batch);
+          recorder.publishedIn(System.nanoTime() - start, batch.size());
+          if (!failed.isEmpty()) {
+            recorder.requeued(failed.size());
+            requeue(failed);
+          }
+          // Rejected events were published before the failed ones.
+          requeueRejected();
+        } catch (InterruptedException e) {
+          logger.atWarning().withCause(e).log("Interupted while waiting for event or connection.");
+        } catch (RuntimeException e) {
+          // Retrying would most likely fail the same way and stall the partition.
+          logger.atSevere().withCause(e).log("Failed to publish, lost %d event(s)", batch.size());
+          recorder.dropped(batch.size());
+          release(batch);
+        }
+      }
+    }
+
+    @Override
+    public void cancel() {
+      canceled = true;
+      wakeUp();
       synchronized (sessionMon) {
         sessionMon.notifyAll();
       }
     }
-  }
 
-  private synchronized void ensurePublisherThreadStarted() {
-    if (publisherThread == null || !publisherThread.isAlive()) {
-      logger.atInfo().log("Creating new publisher thread.");
-      publisherThread = new Thread(publisher);
-      publisherThread.setName("rabbitmq-publisher");
-      publisherThread.start();
+    /** Wakes up the worker in case it is waiting for new events. */
+    void wakeUp() {
+      if (queue.isEmpty()) {
+        queue.offer(EOS);
+      }
+    }
+
+    /**
+     * Returns the next events to publish, starting with the ones that previously failed, followed
+     * by the queued ones and then, for the first worker, the spooled ones. Blocks until at least
+     * one event is available.
+     */
+    private List<EventPayload> nextBatch() throws InterruptedException {
+      int batchSize = properties.getSection(Publish.class).batchSize;
+      List<EventPayload> batch = new ArrayList<>(batchSize);
+      requeueRejected();
+      synchronized (retry) {
+        while (batch.size() < batchSize && !retry.isEmpty()) {
+          batch.add(retry.pollFirst());
+        }
+      }
+      if (batch.size() < batchSize) {
+        queue.drainTo(batch, batchSize - batch.size());
+      }
+      if (batch.isEmpty() && index == 0 && spool != null && isConnected() && othersIdle()) {
+        // Spooled events are newer than the queued ones, hence replayed once all queues are
+        // drained. They are all published by this worker to keep their order.
+        batch.addAll(spool.read(batchSize));
+        recorder.enqueued(spool.takeRestored());
+        recorder.dropped(spool.takeSkipped());
+      }
+      if (batch.isEmpty()) {
+        if (index != 0 && spool != null && spool.isActive()) {
+          // The first worker may have skipped the spool while this one was busy.
+          workers[0].wakeUp();
+        }
+        batch.add(queue.take());
+        queue.drainTo(batch, batchSize - 1);
+      }
+      batch.removeIf(e -> e == EOS);
+      return batch;
+    }
+
+    void requeue(List<EventPayload> failed) {
+      if (failed.isEmpty()) {
+        return;
+      }
+      synchronized (retry) {
+        for (int i = failed.size() - 1; i >= 0; i--) {
+          retry.addFirst(failed.get(i));
+        }
+      }
+      wakeUp();
+    }
+
+    /** Queues events rejected by the broker until this worker requeues them. */
+    void reject(List<EventPayload> payloads) {
+      if (!payloads.isEmpty()) {
+        rejected.add(payloads);
+        wakeUp();
+      }
+    }
+
+    /**
+     * Puts the rejected events in front of the events to retry, in the order they were rejected.
+     */
+    private void requeueRejected() {
+      List<EventPayload> payloads = new ArrayList<>();
+      List<EventPayload> next;
+      while ((next = rejected.poll()) != null) {
+        payloads.addAll(next);
+      }
+      requeue(payloads);
+    }
+
+    synchronized void ensureStarted() {
+      if (thread == null || !thread.isAlive()) {
+        logger.atInfo().log("Creating new publisher thread.");
+        thread = new Thread(this);
+        thread.setName(workers.length == 1 ? "rabbitmq-publisher" : "rabbitmq-publisher-" + index);
+        thread.start();
+      }
+    }
+
+    void join() {
+      Thread t = thread;
+      if (t != null) {
+        try {
+          t.join();
+        } catch (InterruptedException e) {
+          // Do nothing
+        }
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "Rabbitmq publisher: "
+          + properties.getSection(Gerrit.class).listenAs
+          + "-"
+          + String.join(",", properties.getSection(AMQP.class).uri)
+          + "#"
+          + index;
     }
   }
+
   /** Runnable that can be gracefully canceled while running. */
   private interface GracefullyCancelableRunnable extends Runnable {
     /** Gracefully cancels the Runnable after completing ongoing task. */
@@ -0,0 +1,118 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.message;
+
+import com.google.common.flogger.FluentLogger;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Message;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses message bodies larger than the configured threshold.
+ *
+ * <p>An instance keeps its deflater and output buffer between messages and must only be used by one
+ * thread at a time.
+ */
+public final class PayloadCompressor {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final byte[] GZIP_HEADER = {
+    0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+  };
+  private static final int GZIP_TRAILER_SIZE = 8;
+
+  private final String encoding;
+  private final int threshold;
+  private final boolean gzip;
+  private final Deflater deflater;
+  private final CRC32 crc = new CRC32();
+  private byte[] buffer = new byte[8192];
+
+  private PayloadCompressor(String encoding, int threshold) {
+    this.encoding = encoding;
+    this.threshold = threshold;
+    this.gzip = Message.COMPRESSION_GZIP.equals(encoding);
+    this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, gzip);
+  }
+
+  /** Returns a compressor for the configured compression, or null if it is disabled. */
+  public static PayloadCompressor create(Message config) {
+    if (Message.COMPRESSION_GZIP.equals(config.compression)
+        || Message.COMPRESSION_DEFLATE.equals(config.compression)) {
+      return new PayloadCompressor(config.compression, config.compressionThreshold);
+    }
+    if (!Message.COMPRESSION_NONE.equals(config.compression)) {
+      logger.atWarning().log(
+          "Unknown compression %s, messages are not compressed", config.compression);
+    }
+    return null;
+  }
+
+  /** Returns the content encoding of the compressed bodies. */
+  public String getEncoding() {
+    return encoding;
+  }
+
+  /**
+   * Compresses the body.
+   *
+   * @return the compressed body, or null if the body is below the threshold or does not get
+   *     smaller.
+   */
+  public byte[] compress(byte[] body) {
+    if (body.length < threshold) {
+      return null;
+    }
+    int length = 0;
+    if (gzip) {
+      System.arraycopy(GZIP_HEADER, 0, buffer, 0, GZIP_HEADER.length);
+      length = GZIP_HEADER.length;
+    }
+    deflater.reset();
+    deflater.setInput(body);
+    deflater.finish();
+    while (!deflater.finished()) {
+      if (length == buffer.length) {
+        if (length >= body.length) {
+          return null;
+        }
+        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+      }
+      length += deflater.deflate(buffer, length, buffer.length - length);
+    }
+    if (gzip) {
+      if (length + GZIP_TRAILER_SIZE > buffer.length) {
+        buffer = Arrays.copyOf(buffer, length + GZIP_TRAILER_SIZE);
+      }
+      crc.reset();
+      crc.update(body, 0, body.length);
+      writeIntLE(buffer, length, (int) crc.getValue());
+      writeIntLE(buffer, length + 4, body.length);
+      length += GZIP_TRAILER_SIZE;
+    }
+    if (length >= body.length) {
+      return null;
+    }
+    return Arrays.copyOf(buffer, length);
+  }
+
+  private static void writeIntLE(byte[] b, int offset, int value) {
+    b[offset] = (byte) value;
+    b[offset + 1] = (byte) (value >> 8);
+    b[offset + 2] = (byte) (value >> 16);
+    b[offset + 3] = (byte) (value >> 24);
+  }
+}
@@ -0,0 +1,35 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.message;
+
+import com.google.gerrit.server.events.Event;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encoding of the events in the message bodies.
+ *
+ * <p>Formats are bound by name in the plugin module and chosen with {@code message.format}. JSON is
+ * not bound as a format: it is the body every {@link EventPayload} keeps anyway, which the spool
+ * and the journal store whatever the format of the messages.
+ */
+public interface PayloadFormat {
+
+  /** Returns the MIME type set as content type of the messages. */
+  String getContentType();
+
+  /** Writes the encoded event to the stream, without closing it. */
+  void write(Event event, OutputStream out) throws IOException;
+}
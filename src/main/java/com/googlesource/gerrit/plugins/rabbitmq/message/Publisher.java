@@ -1,6 +1,5 @@
 package com.googlesource.gerrit.plugins.rabbitmq.message;
 
-import com.google.gerrit.server.events.EventListener;
 import com.googlesource.gerrit.plugins.rabbitmq.config.Properties;
 
 public interface Publisher {
@@ -12,5 +11,5 @@ public interface Publisher {
 
   String getName();
 
-  EventListener getEventListener();
+  void onEvent(EventPayload payload);
 }
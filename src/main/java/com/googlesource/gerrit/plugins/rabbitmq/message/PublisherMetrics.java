@@ -0,0 +1,220 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.message;
+
+import com.google.gerrit.extensions.registration.RegistrationHandle;
+import com.google.gerrit.metrics.CallbackMetric1;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer1;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/** Metrics of the publish pipeline, labeled by the name of the publisher. */
+@Singleton
+public class PublisherMetrics {
+  private final Map<String, LongSupplier> queueDepths = new ConcurrentHashMap<>();
+  private final Counter1<String> filtered;
+  private final Counter1<String> coalesced;
+  private final Counter1<String> enqueued;
+  private final Counter1<String> published;
+  private final Counter1<String> dropped;
+  private final Counter1<String> requeued;
+  private final Counter1<String> nacked;
+  private final Counter1<String> reconnects;
+  private final Counter1<String> channelFailures;
+  private final Timer1<String> queueLatency;
+  private final Timer1<String> publishLatency;
+  private final Timer1<String> eventPublishLatency;
+
+  @Inject
+  public PublisherMetrics(MetricMaker metricMaker) {
+    Field<String> publisher =
+        Field.ofString("publisher", Field.ignoreMetadata())
+            .description("Name of the publisher, i.e. of its config file")
+            .build();
+    this.filtered =
+        metricMaker.newCounter(
+            "publisher/filtered_count",
+            new Description("Events not published because of the filter")
+                .setRate()
+                .setUnit("events"),
+            publisher);
+    this.coalesced =
+        metricMaker.newCounter(
+            "publisher/coalesced_count",
+            new Description("Events superseded or merged into another event")
+                .setRate()
+                .setUnit("events"),
+            publisher);
+    this.enqueued =
+        metricMaker.newCounter(
+            "publisher/enqueued_count",
+            new Description("Events queued or spooled for publishing").setRate().setUnit("events"),
+            publisher);
+    this.published =
+        metricMaker.newCounter(
+            "publisher/published_count",
+            new Description("Events confirmed by the broker").setRate().setUnit("events"),
+            publisher);
+    this.dropped =
+        metricMaker.newCounter(
+            "publisher/dropped_count",
+            new Description("Events lost on the way to the broker").setRate().setUnit("events"),
+            publisher);
+    this.requeued =
+        metricMaker.newCounter(
+            "publisher/requeued_count",
+            new Description("Events put back in the queue after a failed publish")
+                .setRate()
+                .setUnit("events"),
+            publisher);
+    this.nacked =
+        metricMaker.newCounter(
+            "publisher/nacked_count",
+            new Description("Events rejected or not confirmed by the broker")
+                .setRate()
+                .setUnit("events"),
+            publisher);
+    this.reconnects =
+        metricMaker.newCounter(
+            "publisher/reconnect_count",
+            new Description("Connections established again after they were lost")
+                .setRate()
+                .setUnit("reconnects"),
+            publisher);
+    this.channelFailures =
+        metricMaker.newCounter(
+            "publisher/channel_failure_count",
+            new Description("Channels that failed to open or were closed by the broker")
+                .setRate()
+                .setUnit("failures"),
+            publisher);
+    this.queueLatency =
+        metricMaker.newTimer(
+            "publisher/queue_latency",
+            new Description("Time from receiving an event to taking it from the queue")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS),
+            publisher);
+    this.publishLatency =
+        metricMaker.newTimer(
+            "publisher/publish_latency",
+            new Description("Time to publish a batch, including the wait for confirms if any")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS),
+            publisher);
+    this.eventPublishLatency =
+        metricMaker.newTimer(
+            "publisher/event_publish_latency",
+            new Description("Time to publish a batch divided by the number of events in it")
+                .setCumulative()
+                .setUnit(Units.MICROSECONDS),
+            publisher);
+    CallbackMetric1<String, Long> queueDepth =
+        metricMaker.newCallbackMetric(
+            "publisher/queue_depth",
+            Long.class,
+            new Description("Events waiting in the queues of the publisher")
+                .setGauge()
+                .setUnit("events"),
+            publisher);
+    metricMaker.newTrigger(
+        queueDepth,
+        () -> {
+          for (Map.Entry<String, LongSupplier> e : queueDepths.entrySet()) {
+            queueDepth.set(e.getKey(), e.getValue().getAsLong());
+          }
+          queueDepth.prune();
+        });
+  }
+
+  /** Returns the recorder of the given publisher, which reports its queue depth until removed. */
+  public Recorder register(String name, LongSupplier queueDepth) {
+    queueDepths.put(name, queueDepth);
+    return new Recorder(name, queueDepth);
+  }
+
+  /** Records the metrics of one publisher. */
+  public class Recorder implements RegistrationHandle {
+    private final String name;
+    private final LongSupplier queueDepth;
+
+    private Recorder(String name, LongSupplier queueDepth) {
+      this.name = name;
+      this.queueDepth = queueDepth;
+    }
+
+    public void filtered() {
+      filtered.increment(name);
+    }
+
+    public void coalesced(int count) {
+      coalesced.incrementBy(name, count);
+    }
+
+    public void enqueued(int count) {
+      enqueued.incrementBy(name, count);
+    }
+
+    public void published(int count) {
+      published.incrementBy(name, count);
+    }
+
+    public void dropped(int count) {
+      dropped.incrementBy(name, count);
+    }
+
+    public void requeued(int count) {
+      requeued.incrementBy(name, count);
+    }
+
+    public void nacked(int count) {
+      nacked.incrementBy(name, count);
+    }
+
+    public void reconnected() {
+      reconnects.increment(name);
+    }
+
+    public void channelFailed() {
+      channelFailures.increment(name);
+    }
+
+    public void queued(long nanos) {
+      queueLatency.record(name, nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** Records the time to publish a batch of {@code count} events. */
+    public void publishedIn(long nanos, int count) {
+      publishLatency.record(name, nanos, TimeUnit.NANOSECONDS);
+      eventPublishLatency.record(name, nanos / count, TimeUnit.NANOSECONDS);
+    }
+
+    /** Stops reporting the queue depth of the publisher. */
+    @Override
+    public void remove() {
+      // A publisher restarted under the same name may have registered already.
+      queueDepths.remove(name, queueDepth);
+    }
+  }
+}
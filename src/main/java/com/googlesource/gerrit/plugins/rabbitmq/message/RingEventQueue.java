@@ -0,0 +1,154 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.message;
+
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Queue;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Preallocated ring buffer for many producers and a single consumer.
+ *
+ * <p>Producers claim a slot by advancing the tail and then publish the event by updating the
+ * sequence of the slot, so that offering an event allocates nothing and never takes a lock. The
+ * capacity is rounded up to a power of two. When the queue is empty, the consumer spins or yields
+ * according to the wait strategy and then parks until a producer wakes it up.
+ */
+class RingEventQueue implements EventQueue {
+  private static final int SPIN_TRIES = 1000;
+  private static final int YIELD_TRIES = 100;
+  private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private final int mask;
+  private final AtomicReferenceArray<EventPayload> slots;
+  private final AtomicLongArray sequences;
+  private final AtomicLong tail = new AtomicLong();
+  private final int idleTries;
+  private final boolean yield;
+  private volatile long head;
+  private volatile Thread waiter;
+
+  RingEventQueue(int capacity, String waitStrategy) {
+    int size = Integer.highestOneBit(capacity - 1) << 1;
+    mask = size - 1;
+    slots = new AtomicReferenceArray<>(size);
+    sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+    yield = Queue.WAIT_YIELD.equals(waitStrategy);
+    if (yield) {
+      idleTries = YIELD_TRIES;
+    } else if (Queue.WAIT_SPIN.equals(waitStrategy)) {
+      idleTries = SPIN_TRIES;
+    } else {
+      idleTries = 0;
+    }
+  }
+
+  @Override
+  public boolean offer(EventPayload payload) {
+    long pos;
+    while (true) {
+      pos = tail.get();
+      long diff = sequences.get(index(pos)) - pos;
+      if (diff < 0) {
+        return false;
+      }
+      if (diff == 0 && tail.compareAndSet(pos, pos + 1)) {
+        break;
+      }
+    }
+    slots.lazySet(index(pos), payload);
+    sequences.set(index(pos), pos + 1);
+    Thread t = waiter;
+    if (t != null) {
+      LockSupport.unpark(t);
+    }
+    return true;
+  }
+
+  @Override
+  public EventPayload take() throws InterruptedException {
+    EventPayload payload;
+    int tries = 0;
+    while ((payload = poll()) == null) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      if (tries < idleTries) {
+        tries++;
+        if (yield) {
+          Thread.yield();
+        } else {
+          Thread.onSpinWait();
+        }
+        continue;
+      }
+      waiter = Thread.currentThread();
+      try {
+        if (isEmpty()) {
+          LockSupport.parkNanos(this, MAX_PARK_NANOS);
+        }
+      } finally {
+        waiter = null;
+      }
+    }
+    return payload;
+  }
+
+  @Override
+  public int drainTo(Collection<? super EventPayload> c, int max) {
+    int n = 0;
+    EventPayload payload;
+    while (n < max && (payload = poll()) != null) {
+      c.add(payload);
+      n++;
+    }
+    return n;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    long pos = head;
+    return sequences.get(index(pos)) != pos + 1;
+  }
+
+  @Override
+  public int size() {
+    return (int) Math.max(0, tail.get() - head);
+  }
+
+  private EventPayload poll() {
+    long pos = head;
+    int i = index(pos);
+    if (sequences.get(i) != pos + 1) {
+      return null;
+    }
+    EventPayload payload = slots.get(i);
+    slots.lazySet(i, null);
+    sequences.set(i, pos + mask + 1);
+    head = pos + 1;
+    return payload;
+  }
+
+  private int index(long pos) {
+    return (int) pos & mask;
+  }
+}
@@ -0,0 +1,114 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.message;
+
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.server.events.Event;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Routing key of the published messages.
+ *
+ * <p>The configured key may contain placeholders such as {@code ${type}.${project}.${branch}}. It
+ * is parsed once and the placeholders are filled in from the fields of each event; a key without
+ * placeholders is used as is. Dots in field values are replaced by underscores so that a value
+ * always makes up a single word of the key, and the key is truncated to the 255 bytes AMQP allows.
+ */
+public final class RoutingKey {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\{([^}]*)\\}");
+  static final int MAX_LENGTH = 255;
+
+  private final String constant;
+  private final String[] literals;
+  private final List<Function<Event, String>> fields;
+
+  private RoutingKey(String constant, String[] literals, List<Function<Event, String>> fields) {
+    this.constant = constant;
+    this.literals = literals;
+    this.fields = fields;
+  }
+
+  /** Parses the configured routing key. Unknown placeholders are kept as literal text. */
+  public static RoutingKey compile(String template) {
+    if (template == null) {
+      template = "";
+    }
+    List<String> literals = new ArrayList<>();
+    List<Function<Event, String>> fields = new ArrayList<>();
+    StringBuilder literal = new StringBuilder();
+    Matcher m = PLACEHOLDER.matcher(template);
+    int start = 0;
+    while (m.find()) {
+      literal.append(template, start, m.start());
+      start = m.end();
+      Function<Event, String> field = EventFields.accessor(m.group(1));
+      if (field == null) {
+        logger.atWarning().log("Unknown placeholder %s in routing key %s", m.group(), template);
+        literal.append(m.group());
+        continue;
+      }
+      literals.add(literal.toString());
+      literal.setLength(0);
+      fields.add(field);
+    }
+    literal.append(template, start, template.length());
+    literals.add(literal.toString());
+    if (fields.isEmpty()) {
+      return new RoutingKey(truncate(literals.get(0)), null, null);
+    }
+    return new RoutingKey(null, literals.toArray(new String[0]), fields);
+  }
+
+  /** Returns the routing key of the event. Missing fields are replaced by an empty string. */
+  public String get(Event event) {
+    if (constant != null) {
+      return constant;
+    }
+    StringBuilder key = new StringBuilder(64).append(literals[0]);
+    for (int i = 0; i < fields.size(); i++) {
+      String value = fields.get(i).apply(event);
+      if (value != null) {
+        key.append(value.replace('.', '_'));
+      }
+      key.append(literals[i + 1]);
+    }
+    return truncate(key.toString());
+  }
+
+  /** Truncates the key to {@link #MAX_LENGTH} bytes in UTF-8 without splitting a character. */
+  private static String truncate(String key) {
+    if (key.length() * 3 <= MAX_LENGTH) {
+      return key;
+    }
+    int bytes = 0;
+    for (int i = 0; i < key.length(); ) {
+      int cp = key.codePointAt(i);
+      int len = cp < 0x80 ? 1 : cp < 0x800 ? 2 : cp < 0x10000 ? 3 : 4;
+      if (bytes + len > MAX_LENGTH) {
+        logger.atFine().log("Truncated routing key %s", key);
+        return key.substring(0, i);
+      }
+      bytes += len;
+      i += Character.charCount(cp);
+    }
+    return key;
+  }
+}
@@ -13,12 +13,53 @@
 // limitations under the License.
 package com.googlesource.gerrit.plugins.rabbitmq.session;
 
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventPayload;
+import com.googlesource.gerrit.plugins.rabbitmq.message.PayloadFormat;
+import com.googlesource.gerrit.plugins.rabbitmq.message.PublisherMetrics;
+import java.util.List;
+import java.util.function.Consumer;
+
 public interface Session {
   boolean isOpen();
 
+  /**
+   * Returns true while the broker does not accept messages although the session is open, e.g.
+   * because of a memory alarm. Publishing then blocks until the broker accepts messages again.
+   */
+  boolean isBlocked();
+
   boolean connect();
 
   void disconnect();
 
-  boolean publish(String message);
+  /** Sets the format of the message bodies, or null to publish the JSON bodies. */
+  void setPayloadFormat(PayloadFormat format);
+
+  /** Sets the recorder of the metrics of the publisher, e.g. reconnects and channel failures. */
+  void setMetrics(PublisherMetrics.Recorder metrics);
+
+  /** Sets the handler called each time the connection to the broker is established. */
+  void setConnectedHandler(Runnable handler);
+
+  /**
+   * Publishes the given payloads in order on the channel reserved for the given worker.
+   *
+   * @return the payloads that were not published, or not confirmed by the broker when publisher
+   *     confirms are enabled, in their original order.
+   */
+  List<EventPayload> publish(int channel, List<EventPayload> payloads);
+
+  /**
+   * Sets the handler receiving the payloads accepted by the broker, or written to the connection
+   * when publisher confirms are disabled.
+   */
+  void setConfirmedHandler(Consumer<List<EventPayload>> handler);
+
+  /**
+   * Sets the handler receiving, in publish order, the payloads that the broker rejects or fails to
+   * confirm after {@link #publish(int, List)} has returned. The handler is called from the thread
+   * of the connection, but always before a later {@code publish} on the same channel returns newer
+   * payloads as not published.
+   */
+  void setRejectedHandler(Consumer<List<EventPayload>> handler);
 }
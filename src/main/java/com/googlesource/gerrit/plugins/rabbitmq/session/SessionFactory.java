@@ -15,9 +15,12 @@ package com.googlesource.gerrit.plugins.rabbitmq.session;
 
 import com.googlesource.gerrit.plugins.rabbitmq.config.Properties;
 import com.googlesource.gerrit.plugins.rabbitmq.session.type.AMQPSession;
+import com.googlesource.gerrit.plugins.rabbitmq.session.type.ConnectionPool;
 
 public class SessionFactory {
+  private final ConnectionPool pool = new ConnectionPool();
+
   public Session create(Properties properties) {
-    return new AMQPSession(properties);
+    return new AMQPSession(properties, pool);
   }
 }
@@ -14,11 +14,18 @@
 package com.googlesource.gerrit.plugins.rabbitmq.session;
 
 import com.google.inject.Provider;
+import com.google.inject.Singleton;
 
+/**
+ * Provides the session factory shared by all publishers, so that the sessions connecting to the
+ * same broker share the same connection.
+ */
+@Singleton
 public class SessionFactoryProvider implements Provider<SessionFactory> {
+  private final SessionFactory sessionFactory = new SessionFactory();
 
   @Override
   public SessionFactory get() {
-    return new SessionFactory();
+    return sessionFactory;
   }
 }
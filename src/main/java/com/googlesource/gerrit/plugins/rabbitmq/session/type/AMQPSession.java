@@ -18,35 +18,68 @@ import com.google.common.flogger.FluentLogger;
 import com.googlesource.gerrit.plugins.rabbitmq.config.Properties;
 import com.googlesource.gerrit.plugins.rabbitmq.config.section.AMQP;
 import com.googlesource.gerrit.plugins.rabbitmq.config.section.Exchange;
-import com.googlesource.gerrit.plugins.rabbitmq.config.section.Gerrit;
 import com.googlesource.gerrit.plugins.rabbitmq.config.section.Message;
 import com.googlesource.gerrit.plugins.rabbitmq.config.section.Monitor;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Publish;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventPayload;
+import com.googlesource.gerrit.plugins.rabbitmq.message.PayloadCompressor;
+import com.googlesource.gerrit.plugins.rabbitmq.message.PayloadFormat;
+import com.googlesource.gerrit.plugins.rabbitmq.message.PublisherMetrics;
+import com.googlesource.gerrit.plugins.rabbitmq.message.RoutingKey;
 import com.googlesource.gerrit.plugins.rabbitmq.session.Session;
 import com.rabbitmq.client.AlreadyClosedException;
 import com.rabbitmq.client.Channel;
-import com.rabbitmq.client.Connection;
-import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.ShutdownListener;
 import com.rabbitmq.client.ShutdownSignalException;
 import java.io.IOException;
-import java.net.URISyntaxException;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
-import org.apache.commons.codec.CharEncoding;
-import org.apache.commons.lang.StringUtils;
+import java.util.function.Consumer;
 
+/**
+ * Session publishing to the brokers listed in {@code amqp.uri}.
+ *
+ * <p>A connection is kept to each broker, so that publishing can go on through another one as soon
+ * as a broker fails. Each batch is published to the broker chosen by {@code amqp.strategy} among
+ * the ones connected, on a channel reserved for the worker publishing it.
+ */
 public final class AMQPSession implements Session {
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
   private final Properties properties;
-  private volatile Connection connection;
-  private volatile Channel channel;
+  private final ConnectionPool pool;
+  private final Endpoint[] endpoints;
+  private final PayloadCompressor[] compressors;
+  private final RoutingKey routingKey;
+  private final String strategy;
+  private final AtomicInteger nextEndpoint = new AtomicInteger();
 
-  private final AtomicInteger failureCount = new AtomicInteger(0);
+  private volatile PayloadFormat payloadFormat;
+  private volatile PublisherMetrics.Recorder metrics;
+  private volatile Runnable connectedHandler = () -> {};
+  private volatile Consumer<List<EventPayload>> confirmedHandler = confirmed -> {};
+  private volatile Consumer<List<EventPayload>> rejectedHandler = rejected -> {};
 
-  public AMQPSession(Properties properties) {
+  public AMQPSession(Properties properties, ConnectionPool pool) {
     this.properties = properties;
+    this.pool = pool;
+    this.routingKey = RoutingKey.compile(properties.getSection(Message.class).routingKey);
+    AMQP amqp = properties.getSection(AMQP.class);
+    this.strategy = amqp.strategy;
+    int workers = properties.getSection(Publish.class).workers;
+    String[] uris = amqp.uri.length > 0 ? amqp.uri : new String[] {""};
+    this.endpoints = new Endpoint[uris.length];
+    for (int i = 0; i < endpoints.length; i++) {
+      Endpoint endpoint = new Endpoint(uris[i], workers);
+      endpoint.listener = () -> onConnected(endpoint);
+      endpoints[i] = endpoint;
+    }
+    this.compressors = new PayloadCompressor[workers];
+    for (int i = 0; i < workers; i++) {
+      compressors[i] = PayloadCompressor.create(properties.getSection(Message.class));
+    }
   }
 
   private String MSG(String msg) {
@@ -55,136 +88,441 @@ public final class AMQPSession implements Session {
 
   @Override
   public boolean isOpen() {
-    if (connection != null && connection.isOpen()) {
-      return true;
+    for (Endpoint endpoint : endpoints) {
+      if (endpoint.isOpen()) {
+        return true;
+      }
     }
     return false;
   }
 
-  private Channel getChannel() {
-    if (!isOpen()) {
+  @Override
+  public boolean isBlocked() {
+    boolean blocked = false;
+    for (Endpoint endpoint : endpoints) {
+      SharedConnection c = endpoint.openConnection();
+      if (c != null) {
+        if (!c.isBlocked()) {
+          return false;
+        }
+        blocked = true;
+      }
+    }
+    return blocked;
+  }
+
+  private void onConnected(Endpoint endpoint) {
+    PublisherMetrics.Recorder m = metrics;
+    if (endpoint.connectedBefore && m != null) {
+      m.reconnected();
+    }
+    endpoint.connectedBefore = true;
+    connectedHandler.run();
+  }
+
+  /**
+   * Counts a failed channel of the endpoint. Once more than {@code monitor.failureCount} channels
+   * failed in a row, the endpoint is only used for {@code monitor.interval} if no other broker is
+   * available.
+   *
+   * @return true if the failure count was exceeded.
+   */
+  private boolean channelFailed(Endpoint endpoint) {
+    PublisherMetrics.Recorder m = metrics;
+    if (m != null) {
+      m.channelFailed();
+    }
+    Monitor monitor = properties.getSection(Monitor.class);
+    int failures = endpoint.failureCount.incrementAndGet();
+    if (failures <= monitor.failureCount) {
+      return false;
+    }
+    endpoint.failureCount.set(0);
+    endpoint.suspendedUntil = System.currentTimeMillis() + monitor.interval;
+    if (endpoints.length > 1) {
+      logger.atWarning().log(
+          MSG("%d channels failed in a row on %s, avoiding it for %d ms."),
+          failures,
+          endpoint.uri,
+          monitor.interval);
+    }
+    return true;
+  }
+
+  /** Returns the endpoint to publish the next batch to, or null if none is connected. */
+  private Endpoint selectEndpoint() {
+    if (endpoints.length == 1) {
+      return endpoints[0].isOpen() ? endpoints[0] : null;
+    }
+    int first = 0;
+    if (AMQP.STRATEGY_ROUND_ROBIN.equals(strategy)) {
+      first = Math.floorMod(nextEndpoint.getAndIncrement(), endpoints.length);
+    }
+    long now = System.currentTimeMillis();
+    Endpoint selected = null;
+    boolean fallback = false;
+    int selectedOutstanding = Integer.MAX_VALUE;
+    for (int i = 0; i < endpoints.length; i++) {
+      Endpoint endpoint = endpoints[(first + i) % endpoints.length];
+      SharedConnection c = endpoint.openConnection();
+      if (c == null) {
+        continue;
+      }
+      if (c.isBlocked() || endpoint.suspendedUntil > now) {
+        // Only used if all the brokers block publishing or keep failing.
+        if (selected == null) {
+          selected = endpoint;
+          fallback = true;
+        }
+        continue;
+      }
+      if (!AMQP.STRATEGY_LEAST_OUTSTANDING.equals(strategy)) {
+        return endpoint;
+      }
+      int outstanding = endpoint.outstanding();
+      if (selected == null || fallback || outstanding < selectedOutstanding) {
+        selected = endpoint;
+        fallback = false;
+        selectedOutstanding = outstanding;
+      }
+    }
+    return selected;
+  }
+
+  private Channel getChannel(Endpoint endpoint, PublishChannel slot) {
+    SharedConnection connection = endpoint.connection;
+    if (connection == null || !connection.isOpen()) {
       connect();
     } else {
       try {
-        Channel ch = connection.createChannel();
+        Channel ch = connection.borrowChannel();
         int channelId = ch.getChannelNumber();
-        ch.addShutdownListener(
+        ConfirmTracker tracker = null;
+        String confirm = properties.getSection(Publish.class).confirm;
+        if (Publish.CONFIRM_BATCH.equals(confirm)) {
+          tracker = new ConfirmTracker();
+        } else if (Publish.CONFIRM_STREAM.equals(confirm)) {
+          tracker =
+              new ConfirmTracker(
+                  confirmed -> confirmedHandler.accept(confirmed),
+                  rejected -> {
+                    nacked(rejected.size());
+                    rejectedHandler.accept(rejected);
+                  });
+        }
+        ConfirmTracker channelConfirms = tracker;
+        ShutdownListener listener =
             cause -> {
+              if (channelConfirms != null) {
+                channelConfirms.close();
+              }
               if (cause.isInitiatedByApplication()) {
                 logger.atInfo().log(MSG("Channel #%d closed by application."), channelId);
+              } else if (!cause.isHardError()) {
+                // The broker closed this channel only (e.g. unknown exchange): the connection
+                // is fine and the next publish picks up another channel.
+                channelFailed(endpoint);
+                logger.atWarning().log(
+                    MSG("Channel #%d closed by broker. Cause: %s"), channelId, cause.getMessage());
               } else {
+                channelFailed(endpoint);
                 logger.atWarning().log(
                     MSG("Channel #%d closed. Cause: %s"), channelId, cause.getMessage());
               }
-            });
-        failureCount.set(0);
-        logger.atInfo().log(MSG("Channel #%d opened."), channelId);
+            };
+        ch.addShutdownListener(listener);
+        if (tracker != null) {
+          ch.confirmSelect();
+          ch.addConfirmListener(tracker);
+        }
+        slot.shutdownListener = listener;
+        slot.confirms = tracker;
+        logger.atInfo().log(MSG("Channel #%d opened on %s."), channelId, endpoint.uri);
         return ch;
       } catch (IOException | AlreadyClosedException ex) {
-        logger.atSevere().withCause(ex).log(MSG("Failed to open channel."));
-        failureCount.incrementAndGet();
-      }
-      if (failureCount.get() > properties.getSection(Monitor.class).failureCount) {
-        logger.atWarning().log(
-            "Creating channel failed %d times, closing connection.", failureCount.get());
-        disconnect();
+        logger.atSevere().withCause(ex).log(MSG("Failed to open channel on %s."), endpoint.uri);
+        if (channelFailed(endpoint)) {
+          logger.atWarning().log(
+              MSG("Channels keep failing on %s, renewing connection."), endpoint.uri);
+          connection.renew();
+        }
       }
     }
     return null;
   }
 
+  /** Closes the channel of the slot, so that the next publish opens a new one. */
+  private void discard(Endpoint endpoint, PublishChannel slot) {
+    Channel channel = slot.channel;
+    slot.channel = null;
+    slot.confirms = null;
+    channel.removeShutdownListener(slot.shutdownListener);
+    SharedConnection c = endpoint.connection;
+    if (c != null) {
+      c.returnChannel(channel, false);
+    } else {
+      try {
+        channel.abort();
+      } catch (IOException ex) {
+        logger.atWarning().withCause(ex).log(MSG("Error when closing channel."));
+      }
+    }
+    logger.atInfo().log(
+        MSG("Channel #%d was recovered, replacing it to track confirms again."),
+        channel.getChannelNumber());
+  }
+
   @Override
   public boolean connect() {
     if (isOpen()) {
       logger.atInfo().log(MSG("Already connected."));
       return true;
     }
-    AMQP amqp = properties.getSection(AMQP.class);
-    logger.atInfo().log(MSG("Connect to %s..."), amqp.uri);
-    ConnectionFactory factory = new ConnectionFactory();
-    try {
-      if (StringUtils.isNotEmpty(amqp.uri)) {
-        factory.setUri(amqp.uri);
-        if (StringUtils.isNotEmpty(amqp.username)) {
-          factory.setUsername(amqp.username);
-        }
-        Gerrit gerrit = properties.getSection(Gerrit.class);
-        String securePassword = gerrit.getAMQPUserPassword(amqp.username);
-        if (StringUtils.isNotEmpty(securePassword)) {
-          factory.setPassword(securePassword);
-        } else if (StringUtils.isNotEmpty(amqp.password)) {
-          factory.setPassword(amqp.password);
+    boolean connected = false;
+    for (Endpoint endpoint : endpoints) {
+      SharedConnection c;
+      synchronized (this) {
+        c = endpoint.connection;
+        if (c == null) {
+          c = pool.acquire(endpoint.uri, properties);
+          c.addListener(endpoint.listener);
+          endpoint.connection = c;
         }
-        connection = factory.newConnection();
-        connection.addShutdownListener(
-            cause -> {
-              if (cause.isInitiatedByApplication()) {
-                logger.atInfo().log(MSG("Connection closed by application."));
-              } else {
-                logger.atWarning().log(MSG("Connection closed. Cause: %s"), cause.getMessage());
-              }
-            });
-        logger.atInfo().log(MSG("Connection established."));
-        return true;
       }
-    } catch (URISyntaxException ex) {
-      logger.atSevere().log(MSG("URI syntax error: %s"), amqp.uri);
-    } catch (IOException | TimeoutException ex) {
-      logger.atSevere().withCause(ex).log(MSG("Connection cannot be opened."));
-    } catch (KeyManagementException | NoSuchAlgorithmException ex) {
-      logger.atSevere().withCause(ex).log(MSG("Security error when opening connection."));
+      if (c.connect()) {
+        // Already open if shared with another publisher, the listener was not called then.
+        endpoint.connectedBefore = true;
+        connected = true;
+      }
     }
-    return false;
+    return connected;
   }
 
   @Override
   public void disconnect() {
     logger.atInfo().log(MSG("Disconnecting..."));
-    try {
-      if (channel != null) {
-        logger.atInfo().log(MSG("Closing Channel #%d..."), channel.getChannelNumber());
-        channel.close();
+    for (Endpoint endpoint : endpoints) {
+      for (PublishChannel slot : endpoint.channels) {
+        Channel channel = slot.channel;
+        slot.channel = null;
+        if (channel == null) {
+          continue;
+        }
+        SharedConnection c = endpoint.connection;
+        if (c != null && slot.confirms == null && channel.isOpen()) {
+          channel.removeShutdownListener(slot.shutdownListener);
+          c.returnChannel(channel, true);
+          continue;
+        }
+        try {
+          logger.atInfo().log(MSG("Closing Channel #%d..."), channel.getChannelNumber());
+          channel.close();
+        } catch (IOException | TimeoutException | AlreadyClosedException ex) {
+          logger.atSevere().withCause(ex).log(MSG("Error when closing channel."));
+        }
+      }
+
+      SharedConnection c;
+      synchronized (this) {
+        c = endpoint.connection;
+        endpoint.connection = null;
+      }
+      if (c != null) {
+        c.removeListener(endpoint.listener);
+        pool.release(c);
       }
-    } catch (IOException | TimeoutException ex) {
-      logger.atSevere().withCause(ex).log(MSG("Error when closing channel."));
-    } finally {
-      channel = null;
     }
+  }
+
+  @Override
+  public void setConnectedHandler(Runnable handler) {
+    this.connectedHandler = handler;
+  }
 
+  @Override
+  public List<EventPayload> publish(int channelIndex, List<EventPayload> payloads) {
+    Endpoint endpoint = selectEndpoint();
+    if (endpoint == null) {
+      logger.atSevere().log(MSG("Not connected to any broker."));
+      return payloads;
+    }
+    PublishChannel slot = endpoint.channels[channelIndex];
+    ConfirmTracker confirms = slot.confirms;
+    if (slot.channel != null && confirms != null && confirms.isClosed()) {
+      // Recovered by the client since, with delivery tags starting over: publish on a new channel
+      // with a new tracker instead.
+      discard(endpoint, slot);
+    }
+    if (slot.channel == null || !slot.channel.isOpen()) {
+      slot.channel = getChannel(endpoint, slot);
+    } else {
+      // The channel survived since the previous batch.
+      endpoint.failureCount.set(0);
+    }
+    Channel ch = slot.channel;
+    ConfirmTracker tracker = slot.confirms;
+    PayloadCompressor compressor = compressors[channelIndex];
+    PayloadFormat format = payloadFormat;
+    if (ch == null || !ch.isOpen()) {
+      logger.atSevere().log(MSG("Cannot open channel."));
+      return payloads;
+    }
+    Exchange exchange = properties.getSection(Exchange.class);
+    Publish publish = properties.getSection(Publish.class);
+    boolean stream = Publish.CONFIRM_STREAM.equals(publish.confirm);
+    List<EventPayload> failed = new ArrayList<>();
+    int sent = 0;
+    long seqNo = -1;
     try {
-      if (connection != null) {
-        logger.atInfo().log(MSG("Closing Connection..."));
-        connection.close();
+      logger.atFine().log(MSG("Sending %d message(s)."), payloads.size());
+      for (EventPayload payload : payloads) {
+        if (tracker != null) {
+          if (stream && !tracker.awaitCapacity(publish.confirmWindow, publish.confirmTimeout)) {
+            logger.atFine().log(
+                MSG("%d message(s) still waiting for confirmation."), tracker.size());
+            break;
+          }
+          seqNo = ch.getNextPublishSeqNo();
+          tracker.add(seqNo, payload);
+        }
+        byte[] body = format != null ? payload.getBody(format) : payload.getBody();
+        byte[] compressed = compressor != null ? compressor.compress(body) : null;
+        ch.basicPublish(
+            exchange.name,
+            routingKey.get(payload.getEvent()),
+            properties
+                .getAMQProperties()
+                .getBasicProperties(
+                    payload.getEvent(),
+                    format != null ? format.getContentType() : null,
+                    compressed != null ? compressor.getEncoding() : null),
+            compressed != null ? compressed : body);
+        sent++;
       }
-    } catch (IOException | ShutdownSignalException ex) {
-      logger.atWarning().withCause(ex).log(MSG("Error when closing connection."));
-    } finally {
-      connection = null;
+    } catch (IOException | AlreadyClosedException ex) {
+      logger.atSevere().withCause(ex).log(MSG("Error when sending meessage."));
+      if (tracker != null && !tracker.remove(seqNo)) {
+        // Already handed over by the tracker, e.g. to the rejected handler when the channel
+        // closed: it must not be returned as failed too.
+        sent++;
+      }
+    } catch (InterruptedException ex) {
+      logger.atWarning().log(MSG("Interrupted while waiting for confirms."));
+      Thread.currentThread().interrupt();
+    }
+    if (tracker != null && stream && (tracker.isClosed() || !ch.isOpen())) {
+      // Outstanding messages are older than the unsent ones: return them first rather than leaving
+      // them to the rejected handler, which may run after this batch was requeued.
+      failed.addAll(tracker.drain());
+    }
+    List<EventPayload> confirmed = payloads.subList(0, sent);
+    if (tracker != null && !stream) {
+      waitForConfirms(ch, tracker);
+      failed.addAll(tracker.drain());
+      nacked(failed.size());
+      if (!failed.isEmpty()) {
+        confirmed = new ArrayList<>(confirmed);
+        confirmed.removeAll(failed);
+      }
+    }
+    if (!stream && !confirmed.isEmpty()) {
+      confirmedHandler.accept(confirmed);
     }
+    failed.addAll(payloads.subList(sent, payloads.size()));
+    return failed;
   }
 
   @Override
-  public boolean publish(String messageBody) {
-    if (channel == null || !channel.isOpen()) {
-      channel = getChannel();
+  public void setPayloadFormat(PayloadFormat format) {
+    this.payloadFormat = format;
+  }
+
+  @Override
+  public void setMetrics(PublisherMetrics.Recorder metrics) {
+    this.metrics = metrics;
+  }
+
+  private void nacked(int count) {
+    PublisherMetrics.Recorder m = metrics;
+    if (m != null && count > 0) {
+      m.nacked(count);
     }
-    if (channel != null && channel.isOpen()) {
-      Message message = properties.getSection(Message.class);
-      Exchange exchange = properties.getSection(Exchange.class);
-      try {
-        logger.atFine().log(MSG("Sending message."));
-        channel.basicPublish(
-            exchange.name,
-            message.routingKey,
-            properties.getAMQProperties().getBasicProperties(),
-            messageBody.getBytes(CharEncoding.UTF_8));
-        return true;
-      } catch (IOException ex) {
-        logger.atSevere().withCause(ex).log(MSG("Error when sending meessage."));
-        return false;
+  }
+
+  @Override
+  public void setConfirmedHandler(Consumer<List<EventPayload>> handler) {
+    this.confirmedHandler = handler;
+  }
+
+  @Override
+  public void setRejectedHandler(Consumer<List<EventPayload>> handler) {
+    this.rejectedHandler = handler;
+  }
+
+  private void waitForConfirms(Channel ch, ConfirmTracker tracker) {
+    try {
+      if (!ch.waitForConfirms(properties.getSection(Publish.class).confirmTimeout)) {
+        logger.atWarning().log(MSG("Broker rejected %d message(s)."), tracker.size());
       }
+    } catch (TimeoutException ex) {
+      logger.atWarning().log(
+          MSG("Timed out waiting for confirmation of %d message(s)."), tracker.size());
+    } catch (ShutdownSignalException ex) {
+      logger.atWarning().log(MSG("Channel closed while waiting for confirms: %s"), ex.getMessage());
+    } catch (InterruptedException ex) {
+      logger.atWarning().log(MSG("Interrupted while waiting for confirms."));
+      Thread.currentThread().interrupt();
     }
-    logger.atSevere().log(MSG("Cannot open channel."));
-    return false;
+  }
+
+  /** Broker listed in {@code amqp.uri}, with the channels of the workers on its connection. */
+  private static class Endpoint {
+    final String uri;
+    final PublishChannel[] channels;
+    final AtomicInteger failureCount = new AtomicInteger(0);
+    Runnable listener;
+    volatile SharedConnection connection;
+    volatile boolean connectedBefore;
+    volatile long suspendedUntil;
+
+    Endpoint(String uri, int workers) {
+      this.uri = uri;
+      this.channels = new PublishChannel[workers];
+      for (int i = 0; i < workers; i++) {
+        channels[i] = new PublishChannel();
+      }
+    }
+
+    boolean isOpen() {
+      return openConnection() != null;
+    }
+
+    /**
+     * Returns the connection if it is open, or null. The connection is dropped concurrently when
+     * the session is closed, hence callers use the returned one rather than {@link #connection}.
+     */
+    SharedConnection openConnection() {
+      SharedConnection c = connection;
+      return c != null && c.isOpen() ? c : null;
+    }
+
+    /** Returns the number of messages published to this broker and not confirmed yet. */
+    int outstanding() {
+      int n = 0;
+      for (PublishChannel slot : channels) {
+        ConfirmTracker confirms = slot.confirms;
+        if (confirms != null) {
+          n += confirms.size();
+        }
+      }
+      return n;
+    }
+  }
+
+  /** Channel used by one publisher worker, along with its confirm tracker. */
+  private static class PublishChannel {
+    volatile Channel channel;
+    volatile ConfirmTracker confirms;
+    volatile ShutdownListener shutdownListener;
   }
 }
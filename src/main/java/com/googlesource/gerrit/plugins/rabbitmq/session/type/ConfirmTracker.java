@@ -0,0 +1,160 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.session.type;
+
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventPayload;
+import com.rabbitmq.client.ConfirmListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+
+/**
+ * Keeps track of the messages published on a channel in confirm mode until the broker confirms
+ * them.
+ *
+ * <p>When handlers are given, acked messages are handed to the confirmed handler, while nacked
+ * messages and the messages still outstanding when the channel is closed are handed to the rejected
+ * handler, in publish order. Otherwise nacked messages are kept until {@link #drain()} is called.
+ *
+ * <p>Handing messages to the rejected handler and draining are mutually exclusive, so that once
+ * {@link #drain()} returns, every message taken by the listener thread before was handed over.
+ */
+final class ConfirmTracker implements ConfirmListener {
+  private final ConcurrentSkipListMap<Long, EventPayload> unconfirmed =
+      new ConcurrentSkipListMap<>();
+  private final Consumer<List<EventPayload>> confirmedHandler;
+  private final Consumer<List<EventPayload>> rejectedHandler;
+  private volatile boolean closed;
+
+  ConfirmTracker() {
+    this(null, null);
+  }
+
+  ConfirmTracker(
+      Consumer<List<EventPayload>> confirmedHandler, Consumer<List<EventPayload>> rejectedHandler) {
+    this.confirmedHandler = confirmedHandler;
+    this.rejectedHandler = rejectedHandler;
+  }
+
+  void add(long deliveryTag, EventPayload payload) {
+    unconfirmed.put(deliveryTag, payload);
+  }
+
+  /**
+   * Removes the message, e.g. because it could not be published.
+   *
+   * @return false if the message was no longer tracked, in which case it was already handed over to
+   *     a handler or drained.
+   */
+  boolean remove(long deliveryTag) {
+    return unconfirmed.remove(deliveryTag) != null;
+  }
+
+  int size() {
+    return unconfirmed.size();
+  }
+
+  /**
+   * Waits until fewer than {@code window} messages are outstanding.
+   *
+   * @return true if a message can be published, false if the channel was closed or the timeout
+   *     elapsed.
+   */
+  synchronized boolean awaitCapacity(int window, long timeoutMs) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    while (!closed && unconfirmed.size() >= window) {
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        return false;
+      }
+      wait(remaining);
+    }
+    return !closed;
+  }
+
+  /** Removes and returns the outstanding messages in publish order. */
+  synchronized List<EventPayload> drain() {
+    return take(unconfirmed);
+  }
+
+  /**
+   * Tells whether the channel was closed. Delivery tags start over when the channel is recovered,
+   * hence a closed tracker is never used again.
+   */
+  boolean isClosed() {
+    return closed;
+  }
+
+  synchronized void close() {
+    closed = true;
+    notifyAll();
+    if (rejectedHandler != null) {
+      hand(rejectedHandler, drain());
+    }
+  }
+
+  @Override
+  public void handleAck(long deliveryTag, boolean multiple) {
+    if (confirmedHandler != null) {
+      hand(confirmedHandler, remove(deliveryTag, multiple));
+    } else if (multiple) {
+      unconfirmed.headMap(deliveryTag, true).clear();
+    } else {
+      unconfirmed.remove(deliveryTag);
+    }
+    signal();
+  }
+
+  @Override
+  public synchronized void handleNack(long deliveryTag, boolean multiple) {
+    if (rejectedHandler == null) {
+      // Left outstanding, the publisher collects them with drain().
+      return;
+    }
+    hand(rejectedHandler, remove(deliveryTag, multiple));
+    notifyAll();
+  }
+
+  private List<EventPayload> remove(long deliveryTag, boolean multiple) {
+    if (multiple) {
+      return take(unconfirmed.headMap(deliveryTag, true));
+    }
+    EventPayload payload = unconfirmed.remove(deliveryTag);
+    return payload != null ? Collections.singletonList(payload) : Collections.emptyList();
+  }
+
+  private static void hand(Consumer<List<EventPayload>> handler, List<EventPayload> payloads) {
+    if (!payloads.isEmpty()) {
+      handler.accept(payloads);
+    }
+  }
+
+  private synchronized void signal() {
+    notifyAll();
+  }
+
+  private static List<EventPayload> take(NavigableMap<Long, EventPayload> map) {
+    List<EventPayload> taken = new ArrayList<>(map.size());
+    Map.Entry<Long, EventPayload> entry;
+    while ((entry = map.pollFirstEntry()) != null) {
+      taken.add(entry.getValue());
+    }
+    return taken;
+  }
+}
@@ -0,0 +1,62 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.session.type;
+
+import com.googlesource.gerrit.plugins.rabbitmq.config.Properties;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.AMQP;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Monitor;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reference counted connections, one per broker URI, credentials and connection settings. Files
+ * that differ in any of them get a connection of their own rather than the one opened first.
+ */
+public final class ConnectionPool {
+  private final Map<String, SharedConnection> connections = new HashMap<>();
+
+  /** Returns the connection to the broker at the given URI, one of {@code amqp.uri}. */
+  public synchronized SharedConnection acquire(String uri, Properties properties) {
+    String key = key(uri, properties);
+    SharedConnection connection = connections.get(key);
+    if (connection == null) {
+      connection = new SharedConnection(key, uri, properties);
+      connections.put(key, connection);
+    }
+    connection.retain();
+    return connection;
+  }
+
+  public synchronized void release(SharedConnection connection) {
+    if (connection.release()) {
+      connections.remove(connection.key);
+    }
+  }
+
+  private static String key(String uri, Properties properties) {
+    AMQP amqp = properties.getSection(AMQP.class);
+    Monitor monitor = properties.getSection(Monitor.class);
+    return String.join(
+        "\n",
+        uri,
+        amqp.username,
+        SharedConnection.password(properties),
+        String.valueOf(amqp.channelCacheSize),
+        String.valueOf(monitor.interval),
+        String.valueOf(monitor.reconnectDelay),
+        String.valueOf(monitor.maxReconnectDelay),
+        String.valueOf(monitor.automaticRecovery));
+  }
+}
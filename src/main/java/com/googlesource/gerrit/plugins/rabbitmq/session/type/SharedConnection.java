@@ -0,0 +1,382 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.session.type;
+
+import com.google.common.flogger.FluentLogger;
+import com.googlesource.gerrit.plugins.rabbitmq.config.Properties;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.AMQP;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Gerrit;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Monitor;
+import com.rabbitmq.client.AlreadyClosedException;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.RecoveryListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Connection to a broker shared by all the sessions using the same URI, credentials and connection
+ * settings, see {@link ConnectionPool}.
+ *
+ * <p>While it is referenced, it is reconnected as soon as it is lost, with an exponential backoff
+ * between failed attempts, and the sessions are notified once it is established again. A periodic
+ * monitor also reconnects it in case a loss went unnoticed. The client's automatic recovery can be
+ * used instead.
+ *
+ * <p>A few idle channels are kept open so that a session replacing a channel closed by the broker
+ * does not have to wait for a new one to be negotiated.
+ */
+public final class SharedConnection {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final int MONITOR_FIRSTTIME_DELAY = 15000;
+
+  final String key;
+  private final String uri;
+  private final Properties properties;
+  private final Set<Runnable> listeners = new CopyOnWriteArraySet<>();
+  private final Deque<Channel> idleChannels = new ArrayDeque<>();
+  private final int channelCacheSize;
+  private final AtomicBoolean reconnectScheduled = new AtomicBoolean();
+  private final AtomicInteger reconnectAttempts = new AtomicInteger();
+  private volatile Connection connection;
+  private volatile boolean blocked;
+  private volatile Timer monitor;
+  private int references;
+  private boolean refillScheduled;
+
+  SharedConnection(String key, String uri, Properties properties) {
+    this.key = key;
+    this.uri = uri;
+    this.properties = properties;
+    this.channelCacheSize = properties.getSection(AMQP.class).channelCacheSize;
+  }
+
+  private String MSG(String msg) {
+    return String.format("[%s] %s", uri, msg);
+  }
+
+  public boolean isOpen() {
+    Connection c = connection;
+    return c != null && c.isOpen();
+  }
+
+  /** Returns true while the broker blocks publishing, e.g. because of a memory alarm. */
+  public boolean isBlocked() {
+    return blocked && isOpen();
+  }
+
+  public void addListener(Runnable listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(Runnable listener) {
+    listeners.remove(listener);
+  }
+
+  /** Returns an open channel, reusing an idle one when available. */
+  public Channel borrowChannel() throws IOException {
+    Channel ch;
+    synchronized (this) {
+      do {
+        ch = idleChannels.pollFirst();
+      } while (ch != null && !ch.isOpen());
+      scheduleRefill();
+    }
+    return ch != null ? ch : createChannel();
+  }
+
+  /**
+   * Gives back a channel which is not used anymore. It is kept for reuse if it is still open, has
+   * not been put in confirm mode and the cache is not full; it is closed otherwise.
+   */
+  public void returnChannel(Channel ch, boolean reusable) {
+    synchronized (this) {
+      if (reusable && ch.isOpen() && connection != null && idleChannels.size() < channelCacheSize) {
+        idleChannels.addLast(ch);
+        return;
+      }
+    }
+    try {
+      if (ch.isOpen()) {
+        ch.close();
+      }
+    } catch (IOException | TimeoutException | AlreadyClosedException ex) {
+      logger.atWarning().withCause(ex).log(MSG("Error when closing channel."));
+    }
+  }
+
+  private Channel createChannel() throws IOException {
+    Connection c = connection;
+    if (c == null) {
+      throw new IOException("Not connected");
+    }
+    Channel ch = c.createChannel();
+    if (ch == null) {
+      throw new IOException("No channel number available");
+    }
+    return ch;
+  }
+
+  /** Tops up the idle channels from the monitor thread. Must be called holding the lock. */
+  private void scheduleRefill() {
+    if (refillScheduled
+        || monitor == null
+        || connection == null
+        || idleChannels.size() >= channelCacheSize) {
+      return;
+    }
+    refillScheduled = true;
+    monitor.schedule(
+        new TimerTask() {
+          @Override
+          public void run() {
+            refill();
+          }
+        },
+        0);
+  }
+
+  private void refill() {
+    try {
+      while (true) {
+        synchronized (this) {
+          idleChannels.removeIf(ch -> !ch.isOpen());
+          if (connection == null || idleChannels.size() >= channelCacheSize) {
+            return;
+          }
+        }
+        Channel ch = createChannel();
+        returnChannel(ch, true);
+      }
+    } catch (IOException | AlreadyClosedException ex) {
+      logger.atWarning().withCause(ex).log(MSG("Failed to open idle channel."));
+    } finally {
+      synchronized (this) {
+        refillScheduled = false;
+      }
+    }
+  }
+
+  public boolean connect() {
+    synchronized (this) {
+      if (isOpen()) {
+        return true;
+      }
+      if (connection != null && properties.getSection(Monitor.class).automaticRecovery) {
+        // The client is recovering the connection.
+        return false;
+      }
+      if (!open()) {
+        scheduleReconnect();
+        return false;
+      }
+      reconnectAttempts.set(0);
+      scheduleRefill();
+    }
+    notifyListeners();
+    return true;
+  }
+
+  private void notifyListeners() {
+    for (Runnable listener : listeners) {
+      listener.run();
+    }
+  }
+
+  /**
+   * Tries to reconnect after a delay growing exponentially with the number of failed attempts, up
+   * to {@code monitor.maxReconnectDelay}. The delay is randomized so that the Gerrit servers
+   * publishing to a broker which restarts do not all reconnect at once.
+   */
+  private void scheduleReconnect() {
+    Timer t = monitor;
+    if (t == null || !reconnectScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    long delay = reconnectDelay(reconnectAttempts.getAndIncrement());
+    logger.atFine().log(MSG("Reconnecting in %d ms"), delay);
+    try {
+      t.schedule(
+          new TimerTask() {
+            @Override
+            public void run() {
+              reconnectScheduled.set(false);
+              connect();
+            }
+          },
+          delay);
+    } catch (IllegalStateException e) {
+      // The connection was released meanwhile.
+      reconnectScheduled.set(false);
+    }
+  }
+
+  private long reconnectDelay(int attempts) {
+    Monitor config = properties.getSection(Monitor.class);
+    long delay =
+        Math.min(config.maxReconnectDelay, (long) config.reconnectDelay << Math.min(attempts, 20));
+    return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+  }
+
+  /** Closes the connection so that the monitor opens a new one. */
+  public synchronized void renew() {
+    logger.atWarning().log(MSG("Renewing connection."));
+    closeConnection();
+    scheduleReconnect();
+  }
+
+  synchronized void retain() {
+    if (references++ == 0) {
+      monitor = new Timer();
+      monitor.schedule(
+          new TimerTask() {
+            @Override
+            public void run() {
+              if (!isOpen()) {
+                logger.atInfo().log(MSG("Try to reconnect"));
+                connect();
+              }
+            }
+          },
+          MONITOR_FIRSTTIME_DELAY,
+          properties.getSection(Monitor.class).interval);
+    }
+  }
+
+  /** Returns true when the connection is not referenced anymore and has been closed. */
+  synchronized boolean release() {
+    if (--references > 0) {
+      return false;
+    }
+    monitor.cancel();
+    monitor = null;
+    reconnectAttempts.set(0);
+    closeConnection();
+    return true;
+  }
+
+  private boolean open() {
+    AMQP amqp = properties.getSection(AMQP.class);
+    logger.atInfo().log(MSG("Connecting..."));
+    ConnectionFactory factory = new ConnectionFactory();
+    try {
+      if (StringUtils.isNotEmpty(uri)) {
+        factory.setUri(uri);
+        if (StringUtils.isNotEmpty(amqp.username)) {
+          factory.setUsername(amqp.username);
+        }
+        String password = password(properties);
+        if (StringUtils.isNotEmpty(password)) {
+          factory.setPassword(password);
+        }
+        Monitor monitorConfig = properties.getSection(Monitor.class);
+        factory.setAutomaticRecoveryEnabled(monitorConfig.automaticRecovery);
+        if (monitorConfig.automaticRecovery) {
+          factory.setTopologyRecoveryEnabled(true);
+          factory.setRecoveryDelayHandler(this::reconnectDelay);
+        }
+        Connection c = factory.newConnection();
+        blocked = false;
+        c.addShutdownListener(
+            cause -> {
+              if (cause.isInitiatedByApplication()) {
+                logger.atInfo().log(MSG("Connection closed by application."));
+              } else {
+                logger.atWarning().log(MSG("Connection closed. Cause: %s"), cause.getMessage());
+                if (!monitorConfig.automaticRecovery) {
+                  scheduleReconnect();
+                }
+              }
+            });
+        c.addBlockedListener(
+            reason -> {
+              logger.atWarning().log(MSG("Connection blocked by broker: %s"), reason);
+              blocked = true;
+            },
+            () -> {
+              logger.atInfo().log(MSG("Connection unblocked by broker."));
+              blocked = false;
+            });
+        if (c instanceof Recoverable) {
+          ((Recoverable) c)
+              .addRecoveryListener(
+                  new RecoveryListener() {
+                    @Override
+                    public void handleRecovery(Recoverable recoverable) {
+                      logger.atInfo().log(MSG("Connection recovered."));
+                      notifyListeners();
+                    }
+
+                    @Override
+                    public void handleRecoveryStarted(Recoverable recoverable) {
+                      logger.atInfo().log(MSG("Recovering connection..."));
+                    }
+                  });
+        }
+        connection = c;
+        logger.atInfo().log(MSG("Connection established."));
+        return true;
+      }
+    } catch (URISyntaxException ex) {
+      logger.atSevere().log(MSG("URI syntax error: %s"), uri);
+    } catch (IOException | TimeoutException ex) {
+      logger.atSevere().withCause(ex).log(MSG("Connection cannot be opened."));
+    } catch (KeyManagementException | NoSuchAlgorithmException ex) {
+      logger.atSevere().withCause(ex).log(MSG("Security error when opening connection."));
+    }
+    return false;
+  }
+
+  private void closeConnection() {
+    idleChannels.clear();
+    try {
+      if (connection != null) {
+        logger.atInfo().log(MSG("Closing Connection..."));
+        connection.close();
+      }
+    } catch (IOException | ShutdownSignalException ex) {
+      logger.atWarning().withCause(ex).log(MSG("Error when closing connection."));
+    } finally {
+      connection = null;
+    }
+  }
+
+  /** Returns the password from secure.config if any, from the site config otherwise. */
+  static String password(Properties properties) {
+    AMQP amqp = properties.getSection(AMQP.class);
+    String securePassword = properties.getSection(Gerrit.class).getAMQPUserPassword(amqp.username);
+    if (StringUtils.isNotEmpty(securePassword)) {
+      return securePassword;
+    }
+    return amqp.password;
+  }
+}
@@ -0,0 +1,309 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.spool;
+
+import com.google.common.flogger.FluentLogger;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventPayload;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventSerializer;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal of the events accepted by a publisher.
+ *
+ * <p>Events are written to memory-mapped segment files before they are queued, and released once
+ * the broker accepted them. Each record holds the length of the body, its CRC32, the id of the
+ * segment it was written to, its state and the body itself. Releasing a record only flips its state
+ * in the mapped file. Segments are flushed to disk by {@link #sync()}, which is meant to be called
+ * periodically so that many events share the same flush. A segment whose records are all released
+ * is recycled as the file of a later segment; the segment id in each record tells the records of
+ * the current segment from the ones left by a previous use of the file.
+ *
+ * <p>On {@link #open()}, the records that were never released are returned so that they can be
+ * published again. Those that cannot be turned back into events are moved to a quarantine directory
+ * rather than dropped.
+ */
+public class EventJournal {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final String SEGMENT_EXT = ".journal";
+  private static final String QUARANTINE_DIR = "quarantine";
+  private static final int HEADER_SIZE = 20;
+  private static final int LENGTH_OFFSET = 0;
+  private static final int CRC_OFFSET = 4;
+  private static final int SEGMENT_OFFSET = 8;
+  private static final int STATE_OFFSET = 16;
+  private static final int PENDING = 0;
+  private static final int RELEASED = 1;
+
+  private final Path dir;
+  private final int segmentSize;
+  private final int maxSegments;
+  private final EventSerializer serializer;
+  private final TreeMap<Long, Segment> segments = new TreeMap<>();
+  private final Deque<Path> recycled = new ArrayDeque<>();
+  private final Map<EventPayload, Record> records = new HashMap<>();
+  private final Set<Segment> dirty = new HashSet<>();
+  private Segment current;
+  private long nextSegmentId;
+
+  public EventJournal(Path dir, int segmentSize, int maxSegments, EventSerializer serializer) {
+    this.dir = dir;
+    this.segmentSize = segmentSize;
+    this.maxSegments = maxSegments;
+    this.serializer = serializer;
+  }
+
+  /**
+   * Opens the journal.
+   *
+   * @return the events that were journaled but never released, in the order they were written.
+   */
+  public synchronized List<EventPayload> open() throws IOException {
+    Files.createDirectories(dir);
+    TreeMap<Long, Path> files = new TreeMap<>();
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*" + SEGMENT_EXT)) {
+      for (Path file : ds) {
+        String name = file.getFileName().toString();
+        try {
+          files.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_EXT.length())), file);
+        } catch (NumberFormatException e) {
+          logger.atWarning().log("Ignoring unexpected file %s in journal", file);
+        }
+      }
+    }
+    List<EventPayload> pending = new ArrayList<>();
+    for (Map.Entry<Long, Path> file : files.entrySet()) {
+      Segment segment = new Segment(file.getKey(), file.getValue());
+      segment.scan(pending);
+      nextSegmentId = segment.id + 1;
+      if (segment.pending > 0) {
+        segments.put(segment.id, segment);
+      } else {
+        recycled.add(segment.path);
+      }
+    }
+    if (!pending.isEmpty()) {
+      logger.atInfo().log("Journal %s holds %d unpublished event(s)", dir, pending.size());
+    }
+    return pending;
+  }
+
+  /**
+   * Writes the event to the journal.
+   *
+   * @return false if the event cannot be journaled.
+   */
+  public synchronized boolean append(EventPayload payload) {
+    byte[] body = payload.getBody();
+    int recordSize = HEADER_SIZE + body.length;
+    if (recordSize > segmentSize) {
+      logger.atWarning().log("Event of %d bytes is too large for the journal", body.length);
+      return false;
+    }
+    try {
+      if (current == null || current.position + recordSize > segmentSize) {
+        if (segments.size() >= maxSegments) {
+          logger.atSevere().log("Journal %s is full", dir);
+          return false;
+        }
+        roll();
+      }
+      records.put(payload, current.write(body));
+      return true;
+    } catch (IOException e) {
+      logger.atSevere().withCause(e).log("Cannot write to journal %s", dir);
+      return false;
+    }
+  }
+
+  /** Marks the event as handled, it will not be published again after a restart. */
+  public synchronized void release(EventPayload payload) {
+    Record record = records.remove(payload);
+    if (record == null) {
+      return;
+    }
+    Segment segment = record.segment;
+    segment.buffer.putInt(record.offset + STATE_OFFSET, RELEASED);
+    dirty.add(segment);
+    if (--segment.pending == 0 && segment != current) {
+      recycle(segment);
+    }
+  }
+
+  /** Flushes the records written and released since the previous call to disk. */
+  public void sync() {
+    List<Segment> toSync;
+    synchronized (this) {
+      if (dirty.isEmpty()) {
+        return;
+      }
+      toSync = new ArrayList<>(dirty);
+      dirty.clear();
+    }
+    for (Segment segment : toSync) {
+      segment.buffer.force();
+    }
+  }
+
+  /** Flushes the journal. The events not released yet are returned by the next {@link #open()}. */
+  public synchronized void close() {
+    for (Segment segment : segments.values()) {
+      segment.buffer.force();
+    }
+    segments.clear();
+    records.clear();
+    dirty.clear();
+    recycled.clear();
+    current = null;
+  }
+
+  private void roll() throws IOException {
+    Segment previous = current;
+    long id = nextSegmentId++;
+    Path path = dir.resolve(String.format("%020d%s", id, SEGMENT_EXT));
+    Path file = recycled.poll();
+    if (file != null) {
+      Files.move(file, path, StandardCopyOption.ATOMIC_MOVE);
+    }
+    current = new Segment(id, path);
+    segments.put(id, current);
+    if (previous != null && previous.pending == 0) {
+      recycle(previous);
+    }
+  }
+
+  private void recycle(Segment segment) {
+    segments.remove(segment.id);
+    dirty.remove(segment);
+    recycled.add(segment.path);
+  }
+
+  private class Segment {
+    final long id;
+    final Path path;
+    final MappedByteBuffer buffer;
+    int position;
+    int pending;
+
+    Segment(long id, Path path) throws IOException {
+      this.id = id;
+      this.path = path;
+      try (FileChannel channel =
+          FileChannel.open(
+              path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+      }
+    }
+
+    Record write(byte[] body) {
+      int offset = position;
+      CRC32 crc = new CRC32();
+      crc.update(body);
+      buffer.position(offset + HEADER_SIZE);
+      buffer.put(body);
+      buffer.putLong(offset + SEGMENT_OFFSET, id);
+      buffer.putInt(offset + STATE_OFFSET, PENDING);
+      buffer.putInt(offset + CRC_OFFSET, (int) crc.getValue());
+      buffer.putInt(offset + LENGTH_OFFSET, body.length);
+      position += HEADER_SIZE + body.length;
+      pending++;
+      dirty.add(this);
+      return new Record(this, offset);
+    }
+
+    void scan(List<EventPayload> pendingEvents) {
+      while (position + HEADER_SIZE <= segmentSize) {
+        int length = buffer.getInt(position + LENGTH_OFFSET);
+        if (length <= 0
+            || position + HEADER_SIZE + length > segmentSize
+            || buffer.getLong(position + SEGMENT_OFFSET) != id) {
+          break;
+        }
+        byte[] body = new byte[length];
+        buffer.position(position + HEADER_SIZE);
+        buffer.get(body);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        if ((int) crc.getValue() != buffer.getInt(position + CRC_OFFSET)) {
+          logger.atWarning().log("Corrupted record in journal segment %d", id);
+          break;
+        }
+        if (buffer.getInt(position + STATE_OFFSET) == PENDING) {
+          EventPayload payload = serializer.deserialize(body);
+          if (payload != null) {
+            records.put(payload, new Record(this, position));
+            pendingEvents.add(payload);
+            pending++;
+          } else if (quarantine(id, position, body)) {
+            buffer.putInt(position + STATE_OFFSET, RELEASED);
+          } else {
+            // Kept in the journal, the segment is not recycled.
+            pending++;
+          }
+        }
+        position += HEADER_SIZE + length;
+      }
+    }
+  }
+
+  /**
+   * Moves the body of an event that cannot be restored to the quarantine directory, where it can be
+   * looked at and published again by hand.
+   *
+   * @return true if the body was saved.
+   */
+  private boolean quarantine(long segment, int position, byte[] body) {
+    Path file =
+        dir.resolve(QUARANTINE_DIR).resolve(String.format("%020d-%d.json", segment, position));
+    try {
+      Files.createDirectories(file.getParent());
+      Files.write(file, body);
+      logger.atWarning().log("Cannot restore journaled event, moved it to %s", file);
+      return true;
+    } catch (IOException e) {
+      logger.atSevere().withCause(e).log(
+          "Cannot restore journaled event at %d in segment %d, nor quarantine it",
+          position, segment);
+      return false;
+    }
+  }
+
+  private static class Record {
+    final Segment segment;
+    final int offset;
+
+    Record(Segment segment, int offset) {
+      this.segment = segment;
+      this.offset = offset;
+    }
+  }
+}
@@ -0,0 +1,382 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.spool;
+
+import com.google.common.flogger.FluentLogger;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventPayload;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventSerializer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of serialized events kept on disk while the in-memory queue cannot take them.
+ *
+ * <p>The log is split in segment files named after their sequence number. Each record holds the
+ * length of the body, its CRC32 and the body itself. Events read from the spool stay in it until
+ * they are {@link #release released}, i.e. published, and segments are deleted once all their
+ * events are released. The position of the first event not released yet is saved on {@link
+ * #close()} so that a restart resumes from there.
+ */
+public class EventSpool {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final String SEGMENT_EXT = ".spool";
+  private static final String POSITION_FILE = "position";
+  private static final int HEADER_SIZE = 8;
+  private static final byte[] CORRUPTED = new byte[0];
+
+  private final Path dir;
+  private final int segmentSize;
+  private final int maxSegments;
+  private final EventSerializer serializer;
+  private final TreeMap<Long, Path> segments = new TreeMap<>();
+  private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+  private final Deque<Record> unreleased = new ArrayDeque<>();
+  private final Map<EventPayload, Record> records = new IdentityHashMap<>();
+
+  private FileChannel writer;
+  private long writeSegment;
+  private long writePosition;
+  private FileChannel reader;
+  private long readSegment;
+  private long readPosition;
+  private boolean drained;
+  private int skipped;
+  private long lastRestoredSegment = -1;
+  private int restored;
+
+  public EventSpool(Path dir, int segmentSize, int maxSegments, EventSerializer serializer) {
+    this.dir = dir;
+    this.segmentSize = segmentSize;
+    this.maxSegments = maxSegments;
+    this.serializer = serializer;
+  }
+
+  /** Opens the spool, picking up the segments left by a previous run. */
+  public synchronized void open() throws IOException {
+    Files.createDirectories(dir);
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*" + SEGMENT_EXT)) {
+      for (Path segment : ds) {
+        String name = segment.getFileName().toString();
+        try {
+          long id = Long.parseLong(name.substring(0, name.length() - SEGMENT_EXT.length()));
+          segments.put(id, segment);
+        } catch (NumberFormatException e) {
+          logger.atWarning().log("Ignoring unexpected file %s in spool", segment);
+        }
+      }
+    }
+    if (!segments.isEmpty()) {
+      readSegment = segments.firstKey();
+    }
+    Path position = dir.resolve(POSITION_FILE);
+    if (Files.exists(position)) {
+      String[] saved = new String(Files.readAllBytes(position), StandardCharsets.UTF_8).split(" ");
+      if (saved.length == 2 && !segments.isEmpty()) {
+        long segment = Long.parseLong(saved[0].trim());
+        if (segment == segments.firstKey()) {
+          readPosition = Long.parseLong(saved[1].trim());
+        }
+      }
+      Files.delete(position);
+    }
+    if (!segments.isEmpty()) {
+      // The last segment may end with a record cut short by a crash: new events go to a new one.
+      writeSegment = segments.lastKey();
+      lastRestoredSegment = writeSegment;
+      logger.atInfo().log("Spool %s holds %d segment(s) to replay", dir, segments.size());
+    }
+  }
+
+  /** Returns true while events are spooled, in which case new events must be spooled too. */
+  public synchronized boolean isActive() {
+    return !segments.isEmpty();
+  }
+
+  /**
+   * Appends the event at the end of the spool if it already holds events, so that it is published
+   * after them.
+   *
+   * @return true if the event was spooled.
+   */
+  public synchronized boolean appendIfActive(EventPayload payload) {
+    return isActive() && append(payload);
+  }
+
+  /**
+   * Appends the event at the end of the spool.
+   *
+   * @return false if the spool is full or cannot be written.
+   */
+  public synchronized boolean append(EventPayload payload) {
+    byte[] body = payload.getBody();
+    int recordSize = HEADER_SIZE + body.length;
+    try {
+      if (writer == null || (writePosition > 0 && writePosition + recordSize > segmentSize)) {
+        if (segments.size() >= maxSegments) {
+          return false;
+        }
+        roll();
+      }
+      CRC32 crc = new CRC32();
+      crc.update(body);
+      header.clear();
+      header.putInt(body.length).putInt((int) crc.getValue()).flip();
+      ByteBuffer[] record = {header, ByteBuffer.wrap(body)};
+      while (record[1].hasRemaining()) {
+        writer.write(record);
+      }
+      writePosition += recordSize;
+      drained = false;
+      return true;
+    } catch (IOException e) {
+      logger.atSevere().withCause(e).log("Cannot write to spool %s", dir);
+      return false;
+    }
+  }
+
+  /**
+   * Returns up to {@code max} events from the spool, following the ones returned by the previous
+   * calls. The events stay in the spool until they are released.
+   */
+  public synchronized List<EventPayload> read(int max) {
+    List<EventPayload> events = new ArrayList<>(max);
+    while (events.size() < max && !segments.isEmpty() && !drained) {
+      try {
+        if (reader == null) {
+          Long id = segments.ceilingKey(readSegment);
+          if (id == null) {
+            drained = true;
+            break;
+          }
+          if (id != readSegment) {
+            readSegment = id;
+            readPosition = 0;
+          }
+          reader = FileChannel.open(segments.get(id), StandardOpenOption.READ);
+        }
+        long position = readPosition;
+        byte[] body = readRecord();
+        if (body == null) {
+          nextSegment();
+          continue;
+        }
+        if (readSegment <= lastRestoredSegment) {
+          restored++;
+        }
+        EventPayload payload = body != CORRUPTED ? serializer.deserialize(body) : null;
+        if (payload == null) {
+          logger.atWarning().log(
+              "Skipping unreadable event at %d in spool segment %d", position, readSegment);
+          skipped++;
+          continue;
+        }
+        Record record = new Record(readSegment, position);
+        unreleased.add(record);
+        records.put(payload, record);
+        events.add(payload);
+      } catch (IOException e) {
+        logger.atSevere().withCause(e).log(
+            "Cannot read from spool %s, skipping segment %d", dir, readSegment);
+        nextSegment();
+      }
+    }
+    trim();
+    return events;
+  }
+
+  /** Marks an event returned by {@link #read} as published, it will not be read again. */
+  public synchronized void release(EventPayload payload) {
+    Record record = records.remove(payload);
+    if (record == null) {
+      return;
+    }
+    record.released = true;
+    while (!unreleased.isEmpty() && unreleased.peekFirst().released) {
+      unreleased.pollFirst();
+    }
+    trim();
+  }
+
+  /**
+   * Returns the number of events read since the previous call which were spooled by a previous run,
+   * including the unreadable ones.
+   */
+  public synchronized int takeRestored() {
+    int n = restored;
+    restored = 0;
+    return n;
+  }
+
+  /** Returns the number of events skipped since the previous call because they were unreadable. */
+  public synchronized int takeSkipped() {
+    int n = skipped;
+    skipped = 0;
+    return n;
+  }
+
+  /** Closes the spool files and saves the position of the first event not released yet. */
+  public synchronized void close() {
+    try {
+      closeWriter();
+      closeReader();
+      if (!segments.isEmpty()) {
+        Record first = unreleased.peekFirst();
+        Files.write(
+            dir.resolve(POSITION_FILE),
+            (first != null
+                    ? first.segment + " " + first.position
+                    : readSegment + " " + readPosition)
+                .getBytes(StandardCharsets.UTF_8));
+      }
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Cannot close spool %s", dir);
+    }
+    unreleased.clear();
+    records.clear();
+  }
+
+  /**
+   * Reads the record at the read position.
+   *
+   * @return the body, {@link #CORRUPTED} if the record is damaged but the next one can still be
+   *     read, or null at the end of the segment.
+   */
+  private byte[] readRecord() throws IOException {
+    long end = readSegment == writeSegment && writer != null ? writePosition : reader.size();
+    if (readPosition + HEADER_SIZE > end) {
+      return null;
+    }
+    header.clear();
+    readFully(header, readPosition);
+    header.flip();
+    int length = header.getInt();
+    int checksum = header.getInt();
+    if (length < 0 || readPosition + HEADER_SIZE + length > end) {
+      // Nothing can be read past a record whose length is wrong.
+      logger.atWarning().log("Truncated record in spool segment %d", readSegment);
+      return null;
+    }
+    byte[] body = new byte[length];
+    readFully(ByteBuffer.wrap(body), readPosition + HEADER_SIZE);
+    readPosition += HEADER_SIZE + length;
+    CRC32 crc = new CRC32();
+    crc.update(body);
+    if ((int) crc.getValue() != checksum) {
+      logger.atWarning().log("Corrupted record in spool segment %d", readSegment);
+      return CORRUPTED;
+    }
+    return body;
+  }
+
+  /** Moves the read position to the next segment, if the current one is complete. */
+  private void nextSegment() {
+    Long next = segments.higherKey(readSegment);
+    if (next == null) {
+      // More events may be appended to the segment being written.
+      drained = true;
+      return;
+    }
+    try {
+      closeReader();
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Cannot close spool segment %d", readSegment);
+    }
+    readSegment = next;
+    readPosition = 0;
+  }
+
+  /** Deletes the segments whose events were all released. */
+  private void trim() {
+    long needed = unreleased.isEmpty() ? readSegment : unreleased.peekFirst().segment;
+    try {
+      if (drained && unreleased.isEmpty()) {
+        // Fully drained, start over with empty segments.
+        closeWriter();
+        closeReader();
+        needed = Long.MAX_VALUE;
+        readPosition = 0;
+        drained = false;
+      }
+      while (!segments.isEmpty() && segments.firstKey() < needed) {
+        Files.deleteIfExists(segments.pollFirstEntry().getValue());
+      }
+    } catch (IOException e) {
+      logger.atSevere().withCause(e).log("Cannot delete spool segment in %s", dir);
+    }
+  }
+
+  private void readFully(ByteBuffer buf, long position) throws IOException {
+    while (buf.hasRemaining()) {
+      if (reader.read(buf, position + buf.position()) < 0) {
+        throw new IOException("Unexpected end of spool segment " + readSegment);
+      }
+    }
+  }
+
+  private void roll() throws IOException {
+    closeWriter();
+    writeSegment = segments.isEmpty() ? writeSegment + 1 : segments.lastKey() + 1;
+    Path segment = dir.resolve(String.format("%020d%s", writeSegment, SEGMENT_EXT));
+    writer = openWriter(segment);
+    writePosition = 0;
+    segments.put(writeSegment, segment);
+  }
+
+  private FileChannel openWriter(Path segment) throws IOException {
+    return FileChannel.open(
+        segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+  }
+
+  private void closeWriter() throws IOException {
+    if (writer != null) {
+      writer.close();
+      writer = null;
+    }
+  }
+
+  private void closeReader() throws IOException {
+    if (reader != null) {
+      reader.close();
+      reader = null;
+    }
+  }
+
+  /** Position of an event read from the spool and not released yet. */
+  private static class Record {
+    final long segment;
+    final long position;
+    boolean released;
+
+    Record(long segment, long position) {
+      this.segment = segment;
+      this.position = position;
+    }
+  }
+}
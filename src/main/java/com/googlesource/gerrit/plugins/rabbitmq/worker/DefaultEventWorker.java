@@ -17,7 +17,10 @@ package com.googlesource.gerrit.plugins.rabbitmq.worker;
 import com.google.common.flogger.FluentLogger;
 import com.google.gerrit.server.events.Event;
 import com.google.gerrit.server.events.EventListener;
+import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventPayload;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventSerializer;
 import com.googlesource.gerrit.plugins.rabbitmq.message.Publisher;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
@@ -28,6 +31,12 @@ public class DefaultEventWorker implements EventListener, EventWorker {
   private final FluentLogger logger = FluentLogger.forEnclosingClass();
 
   private final Set<Publisher> publishers = new CopyOnWriteArraySet<>();
+  private final EventSerializer serializer;
+
+  @Inject
+  public DefaultEventWorker(EventSerializer serializer) {
+    this.serializer = serializer;
+  }
 
   @Override
   public void addPublisher(Publisher publisher) {
@@ -51,8 +60,9 @@ public class DefaultEventWorker implements EventListener, EventWorker {
 
   @Override
   public void onEvent(Event event) {
+    EventPayload payload = serializer.wrap(event);
     for (Publisher publisher : publishers) {
-      publisher.getEventListener().onEvent(event);
+      publisher.onEvent(payload);
     }
   }
 }
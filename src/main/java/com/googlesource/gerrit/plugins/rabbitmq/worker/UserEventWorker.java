@@ -22,16 +22,28 @@ import com.google.gerrit.server.IdentifiedUser;
 import com.google.gerrit.server.PluginUser;
 import com.google.gerrit.server.account.AccountResolver;
 import com.google.gerrit.server.account.AccountResolver.UnresolvableAccountException;
+import com.google.gerrit.server.config.AllUsersName;
 import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.EventListener;
 import com.google.gerrit.server.events.UserScopedEventListener;
 import com.google.gerrit.server.git.WorkQueue;
+import com.google.gerrit.server.notedb.ChangeNotes;
+import com.google.gerrit.server.permissions.PermissionBackend;
+import com.google.gerrit.server.permissions.PermissionBackendException;
+import com.google.gerrit.server.project.ProjectCache;
 import com.google.gerrit.server.util.RequestContext;
 import com.google.gerrit.server.util.ThreadLocalRequestContext;
 import com.google.inject.Inject;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Gerrit;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventPayload;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventSerializer;
 import com.googlesource.gerrit.plugins.rabbitmq.message.Publisher;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 import org.eclipse.jgit.errors.ConfigInvalidException;
 
 public class UserEventWorker implements EventWorker {
@@ -39,25 +51,44 @@ public class UserEventWorker implements EventWorker {
   private final FluentLogger logger = FluentLogger.forEnclosingClass();
 
   private final DynamicSet<UserScopedEventListener> eventListeners;
+  private final DynamicSet<EventListener> unrestrictedEventListeners;
   private final WorkQueue workQueue;
   private final AccountResolver accountResolver;
   private final ThreadLocalRequestContext threadLocalRequestContext;
   private final PluginUser pluginUser;
-  private final Map<Publisher, RegistrationHandle> eventListenerRegistrations;
+  private final EventSerializer serializer;
+  private final PermissionBackend permissionBackend;
+  private final ProjectCache projectCache;
+  private final ChangeNotes.Factory notesFactory;
+  private final AllUsersName allUsers;
+  private final Map<String, ListenerGroup> groups = new HashMap<>();
+  private final Map<Publisher, ListenerGroup> publisherGroups = new HashMap<>();
+  private final Set<Publisher> pending = new HashSet<>();
 
   @Inject
   public UserEventWorker(
       DynamicSet<UserScopedEventListener> eventListeners,
+      DynamicSet<EventListener> unrestrictedEventListeners,
       WorkQueue workQueue,
       AccountResolver accountResolver,
       ThreadLocalRequestContext threadLocalRequestContext,
-      PluginUser pluginUser) {
+      PluginUser pluginUser,
+      EventSerializer serializer,
+      PermissionBackend permissionBackend,
+      ProjectCache projectCache,
+      ChangeNotes.Factory notesFactory,
+      AllUsersName allUsers) {
     this.eventListeners = eventListeners;
+    this.unrestrictedEventListeners = unrestrictedEventListeners;
     this.workQueue = workQueue;
     this.accountResolver = accountResolver;
     this.threadLocalRequestContext = threadLocalRequestContext;
     this.pluginUser = pluginUser;
-    eventListenerRegistrations = new HashMap<>();
+    this.serializer = serializer;
+    this.permissionBackend = permissionBackend;
+    this.projectCache = projectCache;
+    this.notesFactory = notesFactory;
+    this.allUsers = allUsers;
   }
 
   @Override
@@ -68,6 +99,9 @@ public class UserEventWorker implements EventWorker {
   @Override
   public void addPublisher(
       final String pluginName, final Publisher publisher, final String userName) {
+    synchronized (this) {
+      pending.add(publisher);
+    }
     workQueue
         .getDefaultQueue()
         .submit(
@@ -86,21 +120,7 @@ public class UserEventWorker implements EventWorker {
                         });
                 try {
                   final IdentifiedUser user = accountResolver.resolve(userName).asUniqueUser();
-                  RegistrationHandle registration =
-                      eventListeners.add(
-                          pluginName,
-                          new UserScopedEventListener() {
-                            @Override
-                            public void onEvent(Event event) {
-                              publisher.getEventListener().onEvent(event);
-                            }
-
-                            @Override
-                            public CurrentUser getUser() {
-                              return user;
-                            }
-                          });
-                  eventListenerRegistrations.put(publisher, registration);
+                  addIfPending(pluginName, publisher, user);
                   logger.atInfo().log("Listen events as : %s", userName);
                 } catch (UnresolvableAccountException uae) {
                   logger.atSevere().withCause(uae).log(
@@ -114,11 +134,77 @@ public class UserEventWorker implements EventWorker {
             });
   }
 
+  private synchronized void addIfPending(
+      String pluginName, Publisher publisher, IdentifiedUser user) {
+    if (!pending.remove(publisher)) {
+      // Removed while its account was being resolved.
+      return;
+    }
+    add(pluginName, publisher, user);
+  }
+
+  /**
+   * Adds the publisher to the group of the publishers listening as the same user with the same
+   * cache options, registering a listener for the group if it is the first one.
+   */
+  synchronized void add(String pluginName, Publisher publisher, CurrentUser user) {
+    Gerrit gerrit = publisher.getProperties().getSection(Gerrit.class);
+    boolean cached = gerrit.listenAsCacheSize > 0 && gerrit.listenAsCacheTtl > 0;
+    String key =
+        cached
+            ? user.getAccountId() + "/" + gerrit.listenAsCacheSize + "/" + gerrit.listenAsCacheTtl
+            : user.getAccountId().toString();
+    ListenerGroup group = groups.get(key);
+    if (group == null) {
+      group = new ListenerGroup(key);
+      if (cached) {
+        group.registration =
+            unrestrictedEventListeners.add(
+                pluginName,
+                new CachingEventListener(
+                    group,
+                    new VisibilityCache(
+                        user,
+                        permissionBackend,
+                        projectCache,
+                        notesFactory,
+                        allUsers,
+                        gerrit.listenAsCacheSize,
+                        gerrit.listenAsCacheTtl)));
+      } else {
+        ListenerGroup listeners = group;
+        group.registration =
+            eventListeners.add(
+                pluginName,
+                new UserScopedEventListener() {
+                  @Override
+                  public void onEvent(Event event) {
+                    listeners.onEvent(event);
+                  }
+
+                  @Override
+                  public CurrentUser getUser() {
+                    return user;
+                  }
+                });
+      }
+      groups.put(key, group);
+    }
+    group.publishers.add(publisher);
+    publisherGroups.put(publisher, group);
+  }
+
   @Override
-  public void removePublisher(final Publisher publisher) {
-    RegistrationHandle registration = eventListenerRegistrations.remove(publisher);
-    if (registration != null) {
-      registration.remove();
+  public synchronized void removePublisher(final Publisher publisher) {
+    pending.remove(publisher);
+    ListenerGroup group = publisherGroups.remove(publisher);
+    if (group == null) {
+      return;
+    }
+    group.publishers.remove(publisher);
+    if (group.publishers.isEmpty()) {
+      group.registration.remove();
+      groups.remove(group.key);
     }
   }
 
@@ -126,4 +212,54 @@ public class UserEventWorker implements EventWorker {
   public void clear() {
     // no op.
   }
+
+  /**
+   * Publishers listening as the same user, sharing one listener so that the visibility of each
+   * event is checked once for all of them.
+   */
+  private class ListenerGroup {
+    final String key;
+    final Set<Publisher> publishers = new CopyOnWriteArraySet<>();
+    RegistrationHandle registration;
+
+    ListenerGroup(String key) {
+      this.key = key;
+    }
+
+    void onEvent(Event event) {
+      EventPayload payload = serializer.wrap(event);
+      for (Publisher publisher : publishers) {
+        publisher.onEvent(payload);
+      }
+    }
+  }
+
+  /**
+   * Listens to all events and hands over to the publishers the ones visible to their listenAs user,
+   * instead of letting Gerrit check the permissions of the user for every event.
+   */
+  private class CachingEventListener implements EventListener {
+    private final ListenerGroup group;
+    private final VisibilityCache visibility;
+
+    CachingEventListener(ListenerGroup group, VisibilityCache visibility) {
+      this.group = group;
+      this.visibility = visibility;
+    }
+
+    @Override
+    public void onEvent(Event event) {
+      visibility.invalidate(event);
+      try {
+        if (!visibility.isVisible(event)) {
+          return;
+        }
+      } catch (PermissionBackendException e) {
+        logger.atSevere().withCause(e).log(
+            "Cannot check visibility of %s event, event dropped", event.getType());
+        return;
+      }
+      group.onEvent(event);
+    }
+  }
 }
@@ -0,0 +1,207 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.worker;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.PatchSet;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.config.AllUsersName;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.gerrit.server.events.ChangeEvent;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.ProjectEvent;
+import com.google.gerrit.server.events.RefEvent;
+import com.google.gerrit.server.notedb.ChangeNotes;
+import com.google.gerrit.server.permissions.ChangePermission;
+import com.google.gerrit.server.permissions.PermissionBackend;
+import com.google.gerrit.server.permissions.PermissionBackendException;
+import com.google.gerrit.server.permissions.ProjectPermission;
+import com.google.gerrit.server.permissions.RefPermission;
+import com.google.gerrit.server.project.NoSuchChangeException;
+import com.google.gerrit.server.project.ProjectCache;
+import com.google.gerrit.server.project.ProjectState;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether events are visible to a user the same way Gerrit does for user scoped listeners,
+ * caching the decisions per project and ref.
+ *
+ * <p>Events of private changes are checked each time, as their visibility does not only depend on
+ * the ref. The cached decisions are dropped when the access rights of a project or the members of a
+ * group are updated, and otherwise expire after the configured time to catch changes made outside
+ * of Gerrit, e.g. in an external group backend.
+ */
+final class VisibilityCache {
+  /** The permission checks made when no cached decision applies. */
+  interface Checks {
+    boolean isProjectVisible(Project.NameKey project) throws PermissionBackendException;
+
+    boolean isRefVisible(Project.NameKey project, String refName) throws PermissionBackendException;
+
+    boolean isChangeVisible(Project.NameKey project, Change.Id changeId)
+        throws PermissionBackendException;
+  }
+
+  private final Checks checks;
+  private final AllUsersName allUsers;
+  private final Cache<String, Boolean> decisions;
+
+  VisibilityCache(
+      CurrentUser user,
+      PermissionBackend permissionBackend,
+      ProjectCache projectCache,
+      ChangeNotes.Factory notesFactory,
+      AllUsersName allUsers,
+      int size,
+      long ttl) {
+    this(
+        new PermissionChecks(permissionBackend.user(user), projectCache, notesFactory),
+        allUsers,
+        size,
+        ttl,
+        Ticker.systemTicker());
+  }
+
+  VisibilityCache(Checks checks, AllUsersName allUsers, int size, long ttl, Ticker ticker) {
+    this.checks = checks;
+    this.allUsers = allUsers;
+    this.decisions =
+        CacheBuilder.newBuilder()
+            .maximumSize(size)
+            .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+            .ticker(ticker)
+            .build();
+  }
+
+  boolean isVisible(Event event) throws PermissionBackendException {
+    if (event instanceof ChangeEvent) {
+      ChangeEvent changeEvent = (ChangeEvent) event;
+      ChangeAttribute change = changeEvent.change != null ? changeEvent.change.get() : null;
+      if (change == null) {
+        return false;
+      }
+      if (Boolean.TRUE.equals(change.isPrivate)) {
+        return checks.isChangeVisible(changeEvent.getProjectNameKey(), Change.id(change.number));
+      }
+      // Other changes are visible to the users who can read their destination branch.
+      return isRefVisible(changeEvent.getProjectNameKey(), changeEvent.getRefName());
+    }
+    if (event instanceof RefEvent) {
+      RefEvent refEvent = (RefEvent) event;
+      String refName = refEvent.getRefName();
+      if (PatchSet.isChangeRef(refName)) {
+        return checks.isChangeVisible(refEvent.getProjectNameKey(), Change.Id.fromRef(refName));
+      }
+      return isRefVisible(refEvent.getProjectNameKey(), refName);
+    }
+    if (event instanceof ProjectEvent) {
+      return isProjectVisible(((ProjectEvent) event).getProjectNameKey());
+    }
+    return true;
+  }
+
+  /** Drops the cached decisions that the given event may have made stale. */
+  void invalidate(Event event) {
+    if (!(event instanceof RefEvent) || event instanceof ChangeEvent) {
+      return;
+    }
+    RefEvent refEvent = (RefEvent) event;
+    String refName = refEvent.getRefName();
+    // Access rights are inherited, so that updating those of a project may affect any other one.
+    if (RefNames.isConfigRef(refName)
+        || (allUsers.equals(refEvent.getProjectNameKey()) && RefNames.isRefsGroups(refName))) {
+      decisions.invalidateAll();
+    }
+  }
+
+  private boolean isProjectVisible(Project.NameKey project) throws PermissionBackendException {
+    return cached(project.get(), () -> checks.isProjectVisible(project));
+  }
+
+  private boolean isRefVisible(Project.NameKey project, String refName)
+      throws PermissionBackendException {
+    return cached(project.get() + '\n' + refName, () -> checks.isRefVisible(project, refName));
+  }
+
+  private boolean cached(String key, Decision decision) throws PermissionBackendException {
+    try {
+      return decisions.get(key, decision::isVisible);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof PermissionBackendException) {
+        throw (PermissionBackendException) e.getCause();
+      }
+      throw new PermissionBackendException(e.getCause());
+    }
+  }
+
+  private interface Decision {
+    boolean isVisible() throws PermissionBackendException;
+  }
+
+  /** Checks the permissions of the user with Gerrit's permission backend. */
+  private static class PermissionChecks implements Checks {
+    private final PermissionBackend.WithUser permissions;
+    private final ProjectCache projectCache;
+    private final ChangeNotes.Factory notesFactory;
+
+    PermissionChecks(
+        PermissionBackend.WithUser permissions,
+        ProjectCache projectCache,
+        ChangeNotes.Factory notesFactory) {
+      this.permissions = permissions;
+      this.projectCache = projectCache;
+      this.notesFactory = notesFactory;
+    }
+
+    @Override
+    public boolean isProjectVisible(Project.NameKey project) {
+      return permissions.project(project).testOrFalse(ProjectPermission.ACCESS);
+    }
+
+    @Override
+    public boolean isRefVisible(Project.NameKey project, String refName)
+        throws PermissionBackendException {
+      return isReadable(project)
+          && permissions.project(project).ref(refName).test(RefPermission.READ);
+    }
+
+    @Override
+    public boolean isChangeVisible(Project.NameKey project, Change.Id changeId)
+        throws PermissionBackendException {
+      if (!isReadable(project)) {
+        return false;
+      }
+      ChangeNotes notes;
+      try {
+        notes = notesFactory.createChecked(project, changeId);
+      } catch (NoSuchChangeException e) {
+        return false;
+      }
+      return permissions.change(notes).test(ChangePermission.READ);
+    }
+
+    private boolean isReadable(Project.NameKey project) {
+      Optional<ProjectState> state = projectCache.get(project);
+      return state.isPresent() && state.get().statePermitsRead();
+    }
+  }
+}
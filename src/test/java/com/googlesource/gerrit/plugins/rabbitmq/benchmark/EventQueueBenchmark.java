@@ -0,0 +1,93 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.benchmark;
+
+import static com.googlesource.gerrit.plugins.rabbitmq.testing.TestEvents.patchSetCreated;
+
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Queue;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventPayload;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventQueue;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventSerializer;
+import com.googlesource.gerrit.plugins.rabbitmq.message.GsonProvider;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Cost of handing an event over to a publisher thread, per queue type. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EventQueueBenchmark {
+  private static final int BATCH_SIZE = 64;
+
+  @Param({Queue.TYPE_LINKED, Queue.TYPE_RING})
+  public String type;
+
+  @Param({"false", "true"})
+  public boolean lanes;
+
+  private EventQueue queue;
+  private EventPayload payload;
+  private List<EventPayload> batch;
+
+  @Setup
+  public void setUp() {
+    Queue config = new Queue();
+    config.type = type;
+    config.waitStrategy = Queue.WAIT_BLOCK;
+    config.capacity = 16384;
+    config.lowCapacity = 1024;
+    config.high = lanes ? new String[] {"change-merged"} : new String[0];
+    config.low = lanes ? new String[] {"ref-updated"} : new String[0];
+    queue = EventQueue.create(config);
+    payload =
+        new EventSerializer(new GsonProvider().get(), new DisabledMetricMaker())
+            .wrap(patchSetCreated(1));
+    batch = new ArrayList<>(BATCH_SIZE);
+  }
+
+  @Benchmark
+  public EventPayload offerTake() throws InterruptedException {
+    queue.offer(payload);
+    return queue.take();
+  }
+
+  /** Offers events one by one and drains them in a batch, as a worker publishing in batches. */
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public int offerDrain() {
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      queue.offer(payload);
+    }
+    batch.clear();
+    return queue.drainTo(batch, BATCH_SIZE);
+  }
+}
@@ -0,0 +1,191 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.benchmark;
+
+import static com.googlesource.gerrit.plugins.rabbitmq.testing.TestEvents.patchSetCreated;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.events.Event;
+import com.googlesource.gerrit.plugins.rabbitmq.config.Properties;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventPayload;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventSerializer;
+import com.googlesource.gerrit.plugins.rabbitmq.message.GsonProvider;
+import com.googlesource.gerrit.plugins.rabbitmq.message.MessagePublisher;
+import com.googlesource.gerrit.plugins.rabbitmq.message.PayloadFormat;
+import com.googlesource.gerrit.plugins.rabbitmq.message.PublisherMetrics;
+import com.googlesource.gerrit.plugins.rabbitmq.session.Session;
+import com.googlesource.gerrit.plugins.rabbitmq.session.SessionFactory;
+import com.googlesource.gerrit.plugins.rabbitmq.session.SessionFactoryProvider;
+import com.googlesource.gerrit.plugins.rabbitmq.testing.TestProperties;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost per event of the publish path, from the event listener to the session through the queue and
+ * the worker batches, with a session accepting the messages at once, leaving out the network and
+ * the broker.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PublishBenchmark {
+  private static final int EVENTS = 1000;
+
+  @Param({"1", "64"})
+  public int batchSize;
+
+  @Param({"1", "4"})
+  public int workers;
+
+  private Path dir;
+  private EventSerializer serializer;
+  private AcceptingSession session;
+  private MessagePublisher publisher;
+  private Event[] events;
+
+  @Setup
+  public void setUp() throws Exception {
+    dir = Files.createTempDirectory("rabbitmq-benchmark");
+    Properties properties =
+        TestProperties.load(
+            dir, "benchmark", "[publish]", "  batchSize = " + batchSize, "  workers = " + workers);
+    serializer = new EventSerializer(new GsonProvider().get(), new DisabledMetricMaker());
+    session = new AcceptingSession();
+    publisher =
+        new MessagePublisher(
+            properties,
+            dir.toFile(),
+            session.provider(),
+            serializer,
+            new PublisherMetrics(new DisabledMetricMaker()),
+            ImmutableMap.of());
+    publisher.start();
+    events = new Event[EVENTS];
+    for (int i = 0; i < EVENTS; i++) {
+      // Spread over the workers as the events of different changes.
+      events[i] = patchSetCreated(i + 1);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    publisher.stop();
+    FileUtils.deleteDirectory(dir.toFile());
+  }
+
+  /** Publishes a burst of events and waits until the session got all of them. */
+  @Benchmark
+  @OperationsPerInvocation(EVENTS)
+  public void publish() {
+    long target = session.accepted.get() + EVENTS;
+    for (Event event : events) {
+      publisher.onEvent(serializer.wrap(event));
+    }
+    while (session.accepted.get() < target) {
+      Thread.onSpinWait();
+    }
+  }
+
+  /** Session accepting every message as the broker would with confirms disabled. */
+  private static class AcceptingSession implements Session {
+    final AtomicLong accepted = new AtomicLong();
+    private volatile Consumer<List<EventPayload>> confirmedHandler;
+
+    SessionFactoryProvider provider() {
+      SessionFactory factory =
+          new SessionFactory() {
+            @Override
+            public Session create(Properties properties) {
+              return AcceptingSession.this;
+            }
+          };
+      return new SessionFactoryProvider() {
+        @Override
+        public SessionFactory get() {
+          return factory;
+        }
+      };
+    }
+
+    @Override
+    public List<EventPayload> publish(int channel, List<EventPayload> payloads) {
+      for (EventPayload payload : payloads) {
+        // Serialized by the publisher thread when no listener did it before.
+        payload.getBody();
+      }
+      confirmedHandler.accept(payloads);
+      accepted.addAndGet(payloads.size());
+      return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public boolean isBlocked() {
+      return false;
+    }
+
+    @Override
+    public boolean connect() {
+      return true;
+    }
+
+    @Override
+    public void disconnect() {}
+
+    @Override
+    public void setPayloadFormat(PayloadFormat format) {}
+
+    @Override
+    public void setMetrics(PublisherMetrics.Recorder metrics) {}
+
+    @Override
+    public void setConnectedHandler(Runnable handler) {}
+
+    @Override
+    public void setConfirmedHandler(Consumer<List<EventPayload>> handler) {
+      this.confirmedHandler = handler;
+    }
+
+    @Override
+    public void setRejectedHandler(Consumer<List<EventPayload>> handler) {}
+  }
+}
@@ -0,0 +1,85 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.benchmark;
+
+import static com.googlesource.gerrit.plugins.rabbitmq.testing.TestEvents.patchSetCreated;
+
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.events.Event;
+import com.google.gson.Gson;
+import com.googlesource.gerrit.plugins.rabbitmq.message.CborPayloadFormat;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventPayload;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventSerializer;
+import com.googlesource.gerrit.plugins.rabbitmq.message.GsonProvider;
+import com.googlesource.gerrit.plugins.rabbitmq.message.PayloadFormat;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of turning an event into a message body, paid once per event for all the publishers, and of
+ * restoring it when a spool is replayed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+  private EventSerializer serializer;
+  private PayloadFormat cbor;
+  private Event[] events;
+  private byte[] body;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    Gson gson = new GsonProvider().get();
+    serializer = new EventSerializer(gson, new DisabledMetricMaker());
+    cbor = new CborPayloadFormat(gson);
+    // The serializer reuses the payload of the event it wrapped last, alternate between two.
+    events = new Event[] {patchSetCreated(1), patchSetCreated(2)};
+    body = serializer.wrap(events[0]).getBody();
+  }
+
+  @Benchmark
+  public byte[] json() {
+    return nextPayload().getBody();
+  }
+
+  @Benchmark
+  public byte[] cbor() {
+    return nextPayload().getBody(cbor);
+  }
+
+  @Benchmark
+  public EventPayload deserialize() {
+    return serializer.deserialize(body);
+  }
+
+  private EventPayload nextPayload() {
+    next ^= 1;
+    return serializer.wrap(events[next]);
+  }
+}
@@ -0,0 +1,94 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.message;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.io.BaseEncoding;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import org.junit.Test;
+
+public class CborWriterTest {
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+  private final CborWriter writer = new CborWriter(out);
+
+  @Test
+  public void objectsAndArraysHaveIndefiniteLengths() throws IOException {
+    writer.beginObject().name("a").beginArray().value(1).value(true).endArray().endObject();
+    assertThat(hex()).isEqualTo("bf61619f01f5ffff");
+  }
+
+  @Test
+  public void integersUseTheShortestHead() throws IOException {
+    writer.beginArray();
+    writer.value(23).value(24).value(256).value(65536).value(1L << 32).value(-1).value(-500);
+    writer.endArray();
+    assertThat(hex())
+        .isEqualTo(
+            "9f"
+                + "17"
+                + "1818"
+                + "190100"
+                + "1a00010000"
+                + "1b0000000100000000"
+                + "20"
+                + "3901f3"
+                + "ff");
+  }
+
+  @Test
+  public void fractionsAreWrittenAsDoubles() throws IOException {
+    writer.value(1.5);
+    assertThat(hex()).isEqualTo("fb3ff8000000000000");
+  }
+
+  @Test
+  public void integralNumbersAreWrittenAsIntegers() throws IOException {
+    writer.value((Number) 42.0);
+    assertThat(hex()).isEqualTo("182a");
+  }
+
+  @Test
+  public void textIsEncodedInUtf8() throws IOException {
+    writer.value("aé€😀");
+    assertThat(hex()).isEqualTo("6a" + "61" + "c3a9" + "e282ac" + "f09f9880");
+  }
+
+  @Test
+  public void nullMembersAreDroppedUnlessNullsAreSerialized() throws IOException {
+    writer.setSerializeNulls(false);
+    writer.beginObject().name("a").nullValue().endObject();
+    writer.setSerializeNulls(true);
+    writer.beginObject().name("a").nullValue().endObject();
+    assertThat(hex()).isEqualTo("bfff" + "bf6161f6ff");
+  }
+
+  @Test
+  public void rawJsonIsWrittenAsText() throws IOException {
+    writer.beginObject().name("a").jsonValue("{}").endObject();
+    assertThat(hex()).isEqualTo("bf6161627b7dff");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void nameWithoutValueIsRejected() throws IOException {
+    writer.beginObject().name("a").endObject();
+  }
+
+  private String hex() throws IOException {
+    writer.flush();
+    return BaseEncoding.base16().lowerCase().encode(out.toByteArray());
+  }
+}
@@ -0,0 +1,130 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.message;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.base.Suppliers;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.data.RefUpdateAttribute;
+import com.google.gerrit.server.events.RefUpdatedEvent;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Coalesce;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class EventCoalescerTest {
+  private final EventSerializer serializer =
+      new EventSerializer(new GsonProvider().get(), new DisabledMetricMaker());
+  private final List<EventPayload> published = new ArrayList<>();
+  private int coalesced;
+
+  @Test
+  public void disabledWithoutWindowOrTypes() {
+    assertThat(
+            EventCoalescer.create(
+                config(0, "ref-updated", null), published::add, n -> coalesced += n, serializer))
+        .isNull();
+    assertThat(
+            EventCoalescer.create(
+                config(1000, null, null), published::add, n -> coalesced += n, serializer))
+        .isNull();
+  }
+
+  @Test
+  public void supersededEventsKeepTheLastOnePerRef() {
+    EventCoalescer coalescer =
+        EventCoalescer.create(
+            config(60000, "ref-updated", null), published::add, n -> coalesced += n, serializer);
+    assertThat(coalescer.offer(wrap("p", "refs/heads/a", "1"))).isTrue();
+    assertThat(coalescer.offer(wrap("p", "refs/heads/a", "2"))).isTrue();
+    assertThat(coalescer.offer(wrap("p", "refs/heads/b", "3"))).isTrue();
+    assertThat(published).isEmpty();
+
+    coalescer.stop();
+    assertThat(published).hasSize(2);
+    assertThat(newRev(published.get(0))).isEqualTo("2");
+    assertThat(newRev(published.get(1))).isEqualTo("3");
+    assertThat(coalesced).isEqualTo(1);
+  }
+
+  @Test
+  public void otherTypesAreNotHeld() {
+    EventCoalescer coalescer =
+        EventCoalescer.create(
+            config(60000, "change-merged", null), published::add, n -> coalesced += n, serializer);
+    assertThat(coalescer.offer(wrap("p", "refs/heads/a", "1"))).isFalse();
+  }
+
+  @Test
+  public void mergedEventsAreRestoredFromTheirBody() {
+    EventCoalescer coalescer =
+        EventCoalescer.create(
+            config(60000, null, "ref-updated"), published::add, n -> coalesced += n, serializer);
+    coalescer.offer(wrap("p", "refs/heads/a", "1"));
+    coalescer.offer(wrap("p", "refs/heads/b", "2"));
+    coalescer.offer(wrap("q", "refs/heads/a", "3"));
+    coalescer.stop();
+    assertThat(published).hasSize(2);
+    assertThat(coalesced).isEqualTo(1);
+
+    EventPayload merged = published.get(0);
+    assertThat(merged.getType()).isEqualTo("ref-updated-batch");
+    EventPayload restored = serializer.deserialize(merged.getBody());
+    assertThat(restored.getEvent()).isInstanceOf(CoalescedEvent.class);
+    CoalescedEvent event = (CoalescedEvent) restored.getEvent();
+    assertThat(event.eventType).isEqualTo("ref-updated");
+    assertThat(event.project.get()).isEqualTo("p");
+    assertThat(event.events).hasSize(2);
+    assertThat(event.events.get(1)).isInstanceOf(RefUpdatedEvent.class);
+    assertThat(((RefUpdatedEvent) event.events.get(1)).refUpdate.get().newRev).isEqualTo("2");
+  }
+
+  @Test
+  public void mergedEventsArePublishedOnceFull() {
+    Coalesce config = config(60000, null, "ref-updated");
+    config.maxEvents = 2;
+    EventCoalescer coalescer =
+        EventCoalescer.create(config, published::add, n -> coalesced += n, serializer);
+    coalescer.offer(wrap("p", "refs/heads/a", "1"));
+    coalescer.offer(wrap("p", "refs/heads/b", "2"));
+    assertThat(published).hasSize(1);
+    assertThat(((CoalescedEvent) published.get(0).getEvent()).events).hasSize(2);
+    assertThat(coalesced).isEqualTo(1);
+  }
+
+  private static Coalesce config(int window, String supersede, String merge) {
+    Coalesce config = new Coalesce();
+    config.window = window;
+    config.supersede = supersede == null ? new String[0] : new String[] {supersede};
+    config.merge = merge == null ? new String[0] : new String[] {merge};
+    config.maxEvents = 1000;
+    return config;
+  }
+
+  private EventPayload wrap(String project, String refName, String newRev) {
+    RefUpdatedEvent event = new RefUpdatedEvent();
+    RefUpdateAttribute refUpdate = new RefUpdateAttribute();
+    refUpdate.project = project;
+    refUpdate.refName = refName;
+    refUpdate.newRev = newRev;
+    event.refUpdate = Suppliers.ofInstance(refUpdate);
+    return serializer.wrap(event);
+  }
+
+  private static String newRev(EventPayload payload) {
+    return ((RefUpdatedEvent) payload.getEvent()).refUpdate.get().newRev;
+  }
+}
@@ -0,0 +1,149 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.message;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.googlesource.gerrit.plugins.rabbitmq.testing.TestEvents.patchSetCreated;
+import static com.googlesource.gerrit.plugins.rabbitmq.testing.TestEvents.refUpdated;
+
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.ProjectCreatedEvent;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Filter;
+import org.junit.Test;
+
+public class EventFilterTest {
+
+  @Test
+  public void emptyFilterAcceptsAllEvents() {
+    EventFilter filter = EventFilter.create(new Filter());
+
+    assertThat(filter.accept(patchSetCreated(1))).isTrue();
+    assertThat(filter.accept(projectCreated("project"))).isTrue();
+    assertThat(filter.accept(new Event("custom") {})).isTrue();
+  }
+
+  @Test
+  public void typesAreMatchedByName() {
+    Filter config = new Filter();
+    config.type = new String[] {"patchset-created", "ref-updated"};
+    config.excludeType = new String[] {"ref-updated"};
+    EventFilter filter = EventFilter.create(config);
+
+    assertThat(filter.accept(patchSetCreated(1))).isTrue();
+    assertThat(filter.accept(refUpdated("project", "refs/heads/master"))).isFalse();
+    assertThat(filter.accept(projectCreated("project"))).isFalse();
+  }
+
+  @Test
+  public void regularExpressionMatchesTheWholeName() {
+    EventFilter filter = projects("^plugins/[a-z]+");
+
+    assertThat(filter.accept(projectCreated("plugins/rabbitmq"))).isTrue();
+    assertThat(filter.accept(projectCreated("plugins/rabbitmq2"))).isFalse();
+    assertThat(filter.accept(projectCreated("other/plugins/rabbitmq"))).isFalse();
+  }
+
+  @Test
+  public void globMatchesTheWholeNameLiterally() {
+    EventFilter filter = projects("plugins.*", "app-?");
+
+    // Unlike in a regular expression, the dot is not a wildcard and * matches / too.
+    assertThat(filter.accept(projectCreated("plugins.a/b"))).isTrue();
+    assertThat(filter.accept(projectCreated("pluginsXa"))).isFalse();
+    assertThat(filter.accept(projectCreated("app-1"))).isTrue();
+    assertThat(filter.accept(projectCreated("app-12"))).isFalse();
+    assertThat(filter.accept(projectCreated("my-app-1"))).isFalse();
+  }
+
+  @Test
+  public void plainNamesGlobsAndRegularExpressionsCanBeMixed() {
+    EventFilter filter = projects("project", "plugins/*", "^tools/.+");
+
+    assertThat(filter.accept(projectCreated("project"))).isTrue();
+    assertThat(filter.accept(projectCreated("plugins/rabbitmq"))).isTrue();
+    assertThat(filter.accept(projectCreated("tools/bazel"))).isTrue();
+    assertThat(filter.accept(projectCreated("projects"))).isFalse();
+  }
+
+  @Test
+  public void invalidRegularExpressionIsIgnored() {
+    EventFilter filter = projects("^plugins/(", "project");
+
+    assertThat(filter.accept(projectCreated("project"))).isTrue();
+    assertThat(filter.accept(projectCreated("plugins/("))).isFalse();
+  }
+
+  @Test
+  public void excludeTakesPrecedenceOverInclude() {
+    Filter config = new Filter();
+    config.project = new String[] {"plugins/*"};
+    config.excludeProject = new String[] {"^plugins/secret.*"};
+    EventFilter filter = EventFilter.create(config);
+
+    assertThat(filter.accept(projectCreated("plugins/rabbitmq"))).isTrue();
+    assertThat(filter.accept(projectCreated("plugins/secret-sauce"))).isFalse();
+  }
+
+  @Test
+  public void eventWithoutProjectIsOnlyPublishedWithoutProjectInclude() {
+    Event event = new Event("custom") {};
+    Filter include = new Filter();
+    include.project = new String[] {"*"};
+    Filter exclude = new Filter();
+    exclude.excludeProject = new String[] {"*"};
+
+    assertThat(EventFilter.create(include).accept(event)).isFalse();
+    assertThat(EventFilter.create(exclude).accept(event)).isTrue();
+  }
+
+  @Test
+  public void branchesAreMatchedWithoutRefsHeads() {
+    Filter config = new Filter();
+    config.branch = new String[] {"master", "stable-*", "^refs/meta/.*"};
+    EventFilter filter = EventFilter.create(config);
+
+    assertThat(filter.accept(patchSetCreated("project", "master", 1))).isTrue();
+    assertThat(filter.accept(patchSetCreated("project", "stable-3.3", 2))).isTrue();
+    assertThat(filter.accept(patchSetCreated("project", "feature", 3))).isFalse();
+    assertThat(filter.accept(refUpdated("project", "refs/meta/config"))).isTrue();
+    assertThat(filter.accept(refUpdated("project", "refs/heads/master"))).isTrue();
+    assertThat(filter.accept(refUpdated("project", "refs/tags/master"))).isFalse();
+  }
+
+  @Test
+  public void eventWithoutBranchIsOnlyPublishedWithoutBranchInclude() {
+    Filter include = new Filter();
+    include.branch = new String[] {"*"};
+    Filter exclude = new Filter();
+    exclude.excludeBranch = new String[] {"master"};
+
+    assertThat(EventFilter.create(include).accept(projectCreated("project"))).isFalse();
+    assertThat(EventFilter.create(exclude).accept(projectCreated("project"))).isTrue();
+    assertThat(EventFilter.create(exclude).accept(patchSetCreated(1))).isFalse();
+  }
+
+  private static EventFilter projects(String... patterns) {
+    Filter config = new Filter();
+    config.project = patterns;
+    return EventFilter.create(config);
+  }
+
+  private static ProjectCreatedEvent projectCreated(String project) {
+    ProjectCreatedEvent event = new ProjectCreatedEvent();
+    event.projectName = project;
+    event.headName = "refs/heads/master";
+    return event;
+  }
+}
@@ -0,0 +1,80 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.message;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.base.Suppliers;
+import com.google.gerrit.server.data.RefUpdateAttribute;
+import com.google.gerrit.server.events.RefUpdatedEvent;
+import com.googlesource.gerrit.plugins.rabbitmq.testing.CountingMetricMaker;
+import org.junit.Test;
+
+public class EventSerializerTest {
+  private final CountingMetricMaker metrics = new CountingMetricMaker();
+  private final EventSerializer serializer = new EventSerializer(new GsonProvider().get(), metrics);
+
+  @Test
+  public void sameEventIsWrappedOnce() {
+    RefUpdatedEvent event = refUpdated("1");
+
+    EventPayload payload = serializer.wrap(event);
+
+    assertThat(serializer.wrap(event)).isSameInstanceAs(payload);
+    assertThat(metrics.count("serialization/reused_count")).isEqualTo(1);
+  }
+
+  @Test
+  public void bodyIsSerializedOnceAndRereadsAreNotReuses() {
+    EventPayload payload = serializer.wrap(refUpdated("1"));
+
+    byte[] body = payload.getBody();
+
+    assertThat(payload.getBody()).isSameInstanceAs(body);
+    assertThat(payload.getBody(new CborPayloadFormat(new GsonProvider().get()))).isNotEmpty();
+    assertThat(metrics.count("serialization/serialized_count")).isEqualTo(2);
+    assertThat(metrics.count("serialization/reused_count")).isEqualTo(0);
+  }
+
+  @Test
+  public void otherEventGetsNewPayload() {
+    EventPayload first = serializer.wrap(refUpdated("1"));
+    EventPayload second = serializer.wrap(refUpdated("2"));
+
+    assertThat(second).isNotSameInstanceAs(first);
+    assertThat(metrics.count("serialization/reused_count")).isEqualTo(0);
+  }
+
+  @Test
+  public void bodyIsRestored() {
+    EventPayload payload = serializer.wrap(refUpdated("1"));
+
+    EventPayload restored = serializer.deserialize(payload.getBody());
+
+    assertThat(restored.getEvent()).isInstanceOf(RefUpdatedEvent.class);
+    assertThat(((RefUpdatedEvent) restored.getEvent()).refUpdate.get().newRev).isEqualTo("1");
+    assertThat(serializer.deserialize("not json".getBytes())).isNull();
+  }
+
+  private static RefUpdatedEvent refUpdated(String newRev) {
+    RefUpdatedEvent event = new RefUpdatedEvent();
+    RefUpdateAttribute refUpdate = new RefUpdateAttribute();
+    refUpdate.project = "project";
+    refUpdate.refName = "refs/heads/master";
+    refUpdate.newRev = newRev;
+    event.refUpdate = Suppliers.ofInstance(refUpdate);
+    return event;
+  }
+}
@@ -0,0 +1,137 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.message;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.events.Event;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Queue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+public class LaneEventQueueTest {
+  private static final String HIGH = "change-merged";
+  private static final String NORMAL = "patchset-created";
+  private static final String LOW = "ref-updated";
+
+  private final EventSerializer serializer =
+      new EventSerializer(new GsonProvider().get(), new DisabledMetricMaker());
+
+  @Test
+  public void lanesAreCreatedFromTheConfig() {
+    Queue config = config(Queue.TYPE_LINKED);
+
+    assertThat(EventQueue.create(config)).isInstanceOf(LaneEventQueue.class);
+    config.high = new String[0];
+    config.low = new String[0];
+    assertThat(EventQueue.create(config)).isInstanceOf(LinkedEventQueue.class);
+  }
+
+  @Test
+  public void highLaneGoesFirstAndLowLaneLast() throws Exception {
+    for (String type : new String[] {Queue.TYPE_LINKED, Queue.TYPE_RING}) {
+      EventQueue queue = EventQueue.create(config(type));
+      queue.offer(payload(LOW, 0));
+      queue.offer(payload(NORMAL, 1));
+      queue.offer(payload(HIGH, 2));
+      queue.offer(payload(NORMAL, 3));
+      queue.offer(payload(HIGH, 4));
+      queue.offer(payload(LOW, 5));
+      assertThat(queue.size()).isEqualTo(6);
+
+      List<EventPayload> taken = new ArrayList<>();
+      taken.add(queue.take());
+      queue.drainTo(taken, 2);
+      taken.add(queue.take());
+      queue.drainTo(taken, 10);
+
+      assertThat(seqs(taken)).containsExactly(2, 4, 1, 3, 0, 5).inOrder();
+      assertThat(queue.isEmpty()).isTrue();
+    }
+  }
+
+  @Test
+  public void fullLowLaneShedsOnlyLowPriorityEvents() {
+    Queue config = config(Queue.TYPE_LINKED);
+    EventQueue queue = EventQueue.create(config);
+
+    for (int i = 0; i < config.lowCapacity; i++) {
+      assertThat(queue.offer(payload(LOW, i))).isTrue();
+    }
+
+    assertThat(queue.offer(payload(LOW, config.lowCapacity))).isFalse();
+    assertThat(queue.offer(payload(NORMAL, 100))).isTrue();
+    assertThat(queue.offer(payload(HIGH, 101))).isTrue();
+    assertThat(queue.size()).isEqualTo(config.lowCapacity + 2);
+  }
+
+  @Test
+  public void takeWaitsForAnEventInAnyLane() throws Exception {
+    for (String type : new String[] {HIGH, NORMAL, LOW}) {
+      EventQueue queue = EventQueue.create(config(Queue.TYPE_RING));
+      CompletableFuture<EventPayload> taken =
+          CompletableFuture.supplyAsync(
+              () -> {
+                try {
+                  return queue.take();
+                } catch (InterruptedException e) {
+                  throw new IllegalStateException(e);
+                }
+              });
+
+      queue.offer(payload(type, 7));
+
+      assertThat(seq(taken.get(10, SECONDS))).isEqualTo(7);
+      assertThat(queue.isEmpty()).isTrue();
+    }
+  }
+
+  private static Queue config(String type) {
+    Queue config = new Queue();
+    config.type = type;
+    config.waitStrategy = Queue.WAIT_BLOCK;
+    config.capacity = 64;
+    config.lowCapacity = 16;
+    config.high = new String[] {HIGH};
+    config.low = new String[] {LOW};
+    return config;
+  }
+
+  private EventPayload payload(String type, int seq) {
+    return new EventPayload(new Numbered(type, seq), serializer);
+  }
+
+  private static int seq(EventPayload payload) {
+    return ((Numbered) payload.getEvent()).seq;
+  }
+
+  private static List<Integer> seqs(List<EventPayload> payloads) {
+    return payloads.stream().map(LaneEventQueueTest::seq).collect(Collectors.toList());
+  }
+
+  private static class Numbered extends Event {
+    final int seq;
+
+    Numbered(String type, int seq) {
+      super(type);
+      this.seq = seq;
+    }
+  }
+}
@@ -0,0 +1,114 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.message;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.googlesource.gerrit.plugins.rabbitmq.testing.TestEvents.patchSetCreated;
+
+import com.googlesource.gerrit.plugins.rabbitmq.testing.FakeBroker;
+import com.googlesource.gerrit.plugins.rabbitmq.testing.LoadGenerator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Publishes events at a fixed rate to a broker running in the same process, with faults. */
+public class MessagePublisherLoadTest {
+  private static final int EVENTS = 2000;
+  private static final int RATE = 1000;
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private FakeBroker broker;
+
+  @Before
+  public void setUp() throws Exception {
+    broker = new FakeBroker();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    broker.close();
+  }
+
+  @Test
+  public void everyEventIsPublished() throws Exception {
+    LoadGenerator.Report report = generator().run(i -> patchSetCreated(i + 1), EVENTS, RATE);
+
+    assertBalanced(report);
+    assertThat(report.duplicates).isEqualTo(0);
+  }
+
+  @Test
+  public void eventsAreSpooledWhileTheBrokerBlocksPublishing() throws Exception {
+    LoadGenerator generator = generator("[spool]", "  enabled = true");
+    generator.at(500, () -> broker.block("low on memory")).at(1200, broker::unblock);
+
+    assertBalanced(generator.run(i -> patchSetCreated(i + 1), EVENTS, RATE));
+  }
+
+  @Test
+  public void eventsAreQueuedWhileTheBrokerBlocksPublishing() throws Exception {
+    LoadGenerator generator = generator();
+    generator.at(500, () -> broker.block("low on memory")).at(1200, broker::unblock);
+
+    assertBalanced(generator.run(i -> patchSetCreated(i + 1), EVENTS, RATE));
+  }
+
+  @Test
+  public void unconfirmedEventsArePublishedAgainAfterAForcedDisconnect() throws Exception {
+    LoadGenerator generator = generator("[spool]", "  enabled = true");
+    generator.at(500, broker::disconnect).at(1200, broker::disconnect);
+
+    assertBalanced(generator.run(i -> patchSetCreated(i + 1), EVENTS, RATE));
+    assertThat(generator.getMetrics().count("publisher/reconnect_count")).isAtLeast(2);
+  }
+
+  @Test
+  public void nackedEventsArePublishedAgain() throws Exception {
+    Set<Integer> nacked = ConcurrentHashMap.newKeySet();
+    broker.setAcceptor(
+        message -> {
+          int sequence = LoadGenerator.sequence(message.body);
+          return sequence % 100 != 0 || !nacked.add(sequence);
+        });
+    LoadGenerator generator = generator();
+
+    assertBalanced(generator.run(i -> patchSetCreated(i + 1), EVENTS, RATE));
+    assertThat(generator.getMetrics().count("publisher/nacked_count")).isEqualTo(EVENTS / 100);
+  }
+
+  private LoadGenerator generator(String... config) throws Exception {
+    String[] lines = new String[config.length + 6];
+    lines[0] = "[publish]";
+    lines[1] = "  workers = 2";
+    lines[2] = "  batchSize = 16";
+    lines[3] = "  confirm = stream";
+    lines[4] = "[monitor]";
+    lines[5] = "  reconnectDelay = 50";
+    System.arraycopy(config, 0, lines, 6, config.length);
+    return new LoadGenerator(broker, tmp.getRoot().toPath(), lines).setDrainTimeout(10_000);
+  }
+
+  private static void assertBalanced(LoadGenerator.Report report) {
+    assertThat(report.enqueued).isEqualTo(EVENTS);
+    assertThat(report.dropped).isEqualTo(0);
+    assertThat(report.published).isEqualTo(EVENTS);
+    assertThat(report.lost).isEqualTo(0);
+  }
+}
@@ -0,0 +1,210 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.message;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.googlesource.gerrit.plugins.rabbitmq.testing.TestEvents.numbers;
+import static com.googlesource.gerrit.plugins.rabbitmq.testing.TestEvents.patchSetCreated;
+import static com.googlesource.gerrit.plugins.rabbitmq.testing.TestEvents.refUpdated;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.googlesource.gerrit.plugins.rabbitmq.testing.CountingMetricMaker;
+import com.googlesource.gerrit.plugins.rabbitmq.testing.FakeSession;
+import com.googlesource.gerrit.plugins.rabbitmq.testing.TestProperties;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MessagePublisherTest {
+  private static final long TIMEOUT_MS = 10_000;
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private CountingMetricMaker metrics;
+  private EventSerializer serializer;
+  private FakeSession session;
+  private MessagePublisher publisher;
+
+  @Before
+  public void setUp() {
+    metrics = new CountingMetricMaker();
+    serializer = new EventSerializer(new GsonProvider().get(), metrics);
+    session = new FakeSession();
+  }
+
+  @After
+  public void tearDown() {
+    if (publisher != null) {
+      publisher.stop();
+    }
+  }
+
+  @Test
+  public void rejectedEventsArePublishedAgainBeforeTheFailedOnes() throws Exception {
+    List<EventPayload> outstanding = new ArrayList<>();
+    session.setBroker(
+        new FakeSession.Broker() {
+          boolean closed;
+
+          @Override
+          public List<EventPayload> publish(
+              FakeSession s, int channel, List<EventPayload> payloads) {
+            if (closed) {
+              s.confirm(payloads);
+              return Collections.emptyList();
+            }
+            int failing = numbers(payloads).indexOf(3);
+            if (failing < 0) {
+              // Left unconfirmed until the channel is closed.
+              outstanding.addAll(payloads);
+              return Collections.emptyList();
+            }
+            outstanding.addAll(payloads.subList(0, failing));
+            closed = true;
+            // The connection thread hands over the unconfirmed events while the channel closes.
+            Thread connection = new Thread(() -> s.reject(ImmutableList.copyOf(outstanding)));
+            connection.start();
+            Uninterruptibles.joinUninterruptibly(connection);
+            return new ArrayList<>(payloads.subList(failing, payloads.size()));
+          }
+        });
+    start();
+
+    for (int i = 1; i <= 4; i++) {
+      publisher.onEvent(serializer.wrap(patchSetCreated(i)));
+    }
+
+    assertThat(numbers(session.awaitConfirmed(4, TIMEOUT_MS)))
+        .containsExactly(1, 2, 3, 4)
+        .inOrder();
+  }
+
+  @Test
+  public void spoolIsReplayedOnceTheOtherWorkersAreIdle() throws Exception {
+    int busy = numberInPartition(1, 0);
+    int queued = numberInPartition(1, busy);
+    int spooled = numberInPartition(0, 0);
+    int appended = numberInPartition(0, spooled);
+    CountDownLatch publishing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    session.setBroker(
+        (s, channel, payloads) -> {
+          if (channel == 1) {
+            publishing.countDown();
+            Uninterruptibles.awaitUninterruptibly(release);
+          }
+          s.confirm(payloads);
+          return Collections.emptyList();
+        });
+    start("[publish]", "  workers = 2", "[spool]", "  enabled = true");
+
+    publisher.onEvent(serializer.wrap(patchSetCreated(busy)));
+    assertThat(publishing.await(TIMEOUT_MS, MILLISECONDS)).isTrue();
+    publisher.onEvent(serializer.wrap(patchSetCreated(queued)));
+    session.setBlocked(true);
+    publisher.onEvent(serializer.wrap(patchSetCreated(spooled)));
+    session.setBlocked(false);
+    publisher.onEvent(serializer.wrap(patchSetCreated(appended)));
+    release.countDown();
+
+    assertThat(numbers(session.awaitConfirmed(4, TIMEOUT_MS)))
+        .containsExactly(busy, queued, spooled, appended);
+    assertThat(metrics.count("publisher/enqueued_count")).isEqualTo(4);
+    assertThat(metrics.count("publisher/published_count")).isEqualTo(4);
+  }
+
+  @Test
+  public void publishingIsPacedByTheRateLimit() throws Exception {
+    start("[publish]", "  rateLimit = 50");
+    long start = System.nanoTime();
+
+    for (int i = 1; i <= 26; i++) {
+      publisher.onEvent(serializer.wrap(patchSetCreated(i)));
+    }
+
+    assertThat(session.awaitConfirmed(26, TIMEOUT_MS)).hasSize(26);
+    // The events are spaced by 20 ms, but for the few permits stored while the publisher started.
+    assertThat(NANOSECONDS.toMillis(System.nanoTime() - start)).isAtLeast(300L);
+  }
+
+  @Test
+  public void lowPriorityEventsAreShedRatherThanSpooled() throws Exception {
+    CountDownLatch publishing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    session.setBroker(
+        (s, channel, payloads) -> {
+          publishing.countDown();
+          Uninterruptibles.awaitUninterruptibly(release);
+          s.confirm(payloads);
+          return Collections.emptyList();
+        });
+    start(
+        "[queue]",
+        "  capacity = 16",
+        "  low = ref-updated",
+        "  lowCapacity = 16",
+        "[spool]",
+        "  enabled = true");
+
+    publisher.onEvent(serializer.wrap(patchSetCreated(1)));
+    assertThat(publishing.await(TIMEOUT_MS, MILLISECONDS)).isTrue();
+    for (int i = 0; i < 20; i++) {
+      publisher.onEvent(serializer.wrap(refUpdated("project", "refs/heads/branch-" + i)));
+    }
+    for (int i = 2; i <= 21; i++) {
+      publisher.onEvent(serializer.wrap(patchSetCreated(i)));
+    }
+    release.countDown();
+
+    List<EventPayload> confirmed = session.awaitConfirmed(37, TIMEOUT_MS);
+    assertThat(confirmed.stream().filter(p -> p.getType().equals("ref-updated")).count())
+        .isEqualTo(16);
+    assertThat(confirmed.stream().filter(p -> p.getType().equals("patchset-created")).count())
+        .isEqualTo(21);
+    assertThat(metrics.count("publisher/dropped_count")).isEqualTo(4);
+    assertThat(metrics.count("publisher/enqueued_count")).isEqualTo(37);
+  }
+
+  /** Returns the first change number above {@code after} whose events go to the given worker. */
+  private static int numberInPartition(int partition, int after) {
+    int number = after + 1;
+    while (EventFields.partition(patchSetCreated(number), 2) != partition) {
+      number++;
+    }
+    return number;
+  }
+
+  private void start(String... config) throws Exception {
+    publisher =
+        new MessagePublisher(
+            TestProperties.load(tmp.getRoot().toPath(), "test", config),
+            tmp.newFolder("data"),
+            session.provider(),
+            serializer,
+            new PublisherMetrics(metrics),
+            ImmutableMap.of());
+    publisher.start();
+  }
+}
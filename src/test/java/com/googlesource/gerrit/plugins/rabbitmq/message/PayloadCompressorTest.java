@@ -0,0 +1,141 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.message;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.googlesource.gerrit.plugins.rabbitmq.testing.TestEvents.patchSetCreated;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.io.ByteStreams;
+import com.googlesource.gerrit.plugins.rabbitmq.config.AMQProperties;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Message;
+import com.googlesource.gerrit.plugins.rabbitmq.testing.TestProperties;
+import com.rabbitmq.client.AMQP;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PayloadCompressorTest {
+  private static final int THRESHOLD = 1024;
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void noCompressorWhenDisabledOrUnknown() {
+    assertThat(PayloadCompressor.create(config(Message.COMPRESSION_NONE))).isNull();
+    assertThat(PayloadCompressor.create(config("zstd"))).isNull();
+  }
+
+  @Test
+  public void bodyBelowThresholdIsNotCompressed() {
+    PayloadCompressor compressor = PayloadCompressor.create(config(Message.COMPRESSION_GZIP));
+
+    assertThat(compressor.compress(json(THRESHOLD - 1))).isNull();
+    assertThat(compressor.compress(json(THRESHOLD))).isNotNull();
+  }
+
+  @Test
+  public void gzipBodyIsReadBack() throws Exception {
+    PayloadCompressor compressor = PayloadCompressor.create(config(Message.COMPRESSION_GZIP));
+    byte[] body = json(4096);
+
+    byte[] compressed = compressor.compress(body);
+
+    assertThat(compressor.getEncoding()).isEqualTo("gzip");
+    assertThat(compressed.length).isLessThan(body.length);
+    assertThat(read(new GZIPInputStream(new ByteArrayInputStream(compressed)))).isEqualTo(body);
+  }
+
+  @Test
+  public void deflateBodyIsReadBack() throws Exception {
+    PayloadCompressor compressor = PayloadCompressor.create(config(Message.COMPRESSION_DEFLATE));
+    byte[] body = json(4096);
+
+    byte[] compressed = compressor.compress(body);
+
+    assertThat(compressor.getEncoding()).isEqualTo("deflate");
+    assertThat(compressed.length).isLessThan(body.length);
+    assertThat(read(new InflaterInputStream(new ByteArrayInputStream(compressed)))).isEqualTo(body);
+  }
+
+  @Test
+  public void bodyThatDoesNotShrinkIsSentAsIs() {
+    byte[] body = new byte[64 * 1024];
+    new Random(0).nextBytes(body);
+
+    assertThat(PayloadCompressor.create(config(Message.COMPRESSION_GZIP)).compress(body)).isNull();
+    assertThat(PayloadCompressor.create(config(Message.COMPRESSION_DEFLATE)).compress(body))
+        .isNull();
+  }
+
+  @Test
+  public void compressorIsReusedAcrossBodiesOfAnySize() throws Exception {
+    PayloadCompressor compressor = PayloadCompressor.create(config(Message.COMPRESSION_GZIP));
+    byte[] large = new byte[256 * 1024];
+    Random random = new Random(0);
+    for (int i = 0; i < large.length; i++) {
+      // Compressible, but still larger than the initial buffer once compressed.
+      large[i] = (byte) ('a' + random.nextInt(4));
+    }
+    byte[] small = json(2048);
+
+    for (byte[] body : new byte[][] {small, large, small}) {
+      byte[] compressed = compressor.compress(body);
+      assertThat(read(new GZIPInputStream(new ByteArrayInputStream(compressed)))).isEqualTo(body);
+    }
+  }
+
+  @Test
+  public void compressedMessageCarriesTheContentEncoding() throws Exception {
+    AMQProperties properties =
+        TestProperties.load(tmp.getRoot().toPath(), "test").getAMQProperties();
+
+    AMQP.BasicProperties compressed =
+        properties.getBasicProperties(patchSetCreated(1), null, "gzip");
+    AMQP.BasicProperties plain = properties.getBasicProperties(patchSetCreated(1), null, null);
+
+    assertThat(compressed.getContentEncoding()).isEqualTo("gzip");
+    assertThat(compressed.getContentType()).isEqualTo(AMQProperties.CONTENT_TYPE_JSON);
+    assertThat(plain.getContentEncoding()).isEqualTo("UTF-8");
+  }
+
+  private static Message config(String compression) {
+    Message config = new Message();
+    config.compression = compression;
+    config.compressionThreshold = THRESHOLD;
+    return config;
+  }
+
+  /** Returns a JSON body of the given size, compressible as events are. */
+  private static byte[] json(int size) {
+    StringBuilder json = new StringBuilder("{\"type\":\"patchset-created\",\"data\":\"");
+    while (json.length() < size - 2) {
+      json.append("change ").append(json.length() % 97).append(' ');
+    }
+    json.setLength(size - 2);
+    return json.append("\"}").toString().getBytes(UTF_8);
+  }
+
+  private static byte[] read(InputStream in) throws Exception {
+    try (InputStream stream = in) {
+      return ByteStreams.toByteArray(stream);
+    }
+  }
+}
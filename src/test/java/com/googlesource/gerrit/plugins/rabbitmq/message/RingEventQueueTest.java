@@ -0,0 +1,173 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.message;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.events.Event;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Queue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class RingEventQueueTest {
+  private final EventSerializer serializer =
+      new EventSerializer(new GsonProvider().get(), new DisabledMetricMaker());
+
+  @Test
+  public void capacityIsRoundedUpToAPowerOfTwo() {
+    RingEventQueue queue = new RingEventQueue(5, Queue.WAIT_BLOCK);
+    for (int i = 0; i < 8; i++) {
+      assertThat(queue.offer(payload(0, i))).isTrue();
+    }
+    assertThat(queue.offer(payload(0, 8))).isFalse();
+    assertThat(queue.size()).isEqualTo(8);
+  }
+
+  @Test
+  public void eventsAreTakenInOrderAcrossTheEndOfTheRing() throws Exception {
+    RingEventQueue queue = new RingEventQueue(4, Queue.WAIT_BLOCK);
+    List<Integer> taken = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      assertThat(queue.offer(payload(0, i))).isTrue();
+      if (i % 2 == 1) {
+        taken.add(seq(queue.take()));
+        taken.add(seq(queue.take()));
+      }
+    }
+    assertThat(taken).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9).inOrder();
+    assertThat(queue.isEmpty()).isTrue();
+    assertThat(queue.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void drainToTakesAtMostMaxEvents() {
+    RingEventQueue queue = new RingEventQueue(8, Queue.WAIT_BLOCK);
+    for (int i = 0; i < 5; i++) {
+      queue.offer(payload(0, i));
+    }
+    List<EventPayload> drained = new ArrayList<>();
+
+    assertThat(queue.drainTo(drained, 3)).isEqualTo(3);
+    assertThat(queue.drainTo(drained, 3)).isEqualTo(2);
+    assertThat(queue.drainTo(drained, 3)).isEqualTo(0);
+
+    List<Integer> seqs = new ArrayList<>();
+    for (EventPayload payload : drained) {
+      seqs.add(seq(payload));
+    }
+    assertThat(seqs).containsExactly(0, 1, 2, 3, 4).inOrder();
+  }
+
+  @Test
+  public void takeWaitsForAnEvent() throws Exception {
+    for (String wait : new String[] {Queue.WAIT_BLOCK, Queue.WAIT_SPIN, Queue.WAIT_YIELD}) {
+      RingEventQueue queue = new RingEventQueue(4, wait);
+      EventPayload[] taken = new EventPayload[1];
+      Thread consumer =
+          new Thread(
+              () -> {
+                try {
+                  taken[0] = queue.take();
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                }
+              });
+      consumer.start();
+      Thread.sleep(20);
+      EventPayload payload = payload(0, 0);
+      queue.offer(payload);
+      consumer.join(TimeUnit.SECONDS.toMillis(5));
+
+      assertThat(consumer.isAlive()).isFalse();
+      assertThat(taken[0]).isSameInstanceAs(payload);
+    }
+  }
+
+  @Test(timeout = 5000)
+  public void takeIsInterruptible() throws Exception {
+    RingEventQueue queue = new RingEventQueue(4, Queue.WAIT_BLOCK);
+    boolean[] interrupted = new boolean[1];
+    Thread consumer =
+        new Thread(
+            () -> {
+              try {
+                queue.take();
+              } catch (InterruptedException e) {
+                interrupted[0] = true;
+              }
+            });
+    consumer.start();
+    consumer.interrupt();
+    consumer.join();
+
+    assertThat(interrupted[0]).isTrue();
+  }
+
+  @Test(timeout = 30000)
+  public void concurrentProducersLoseNothingAndKeepTheirOrder() throws Exception {
+    int producers = 4;
+    int events = 20000;
+    RingEventQueue queue = new RingEventQueue(64, Queue.WAIT_SPIN);
+    List<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < producers; p++) {
+      int producer = p;
+      Thread thread =
+          new Thread(
+              () -> {
+                for (int i = 0; i < events; i++) {
+                  EventPayload payload = payload(producer, i);
+                  while (!queue.offer(payload)) {
+                    Thread.yield();
+                  }
+                }
+              });
+      threads.add(thread);
+      thread.start();
+    }
+
+    int[] next = new int[producers];
+    for (int n = 0; n < producers * events; n++) {
+      Numbered event = (Numbered) queue.take().getEvent();
+      assertThat(event.seq).isEqualTo(next[event.producer]);
+      next[event.producer]++;
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertThat(queue.isEmpty()).isTrue();
+  }
+
+  private EventPayload payload(int producer, int seq) {
+    return new EventPayload(new Numbered(producer, seq), serializer);
+  }
+
+  private static int seq(EventPayload payload) {
+    return ((Numbered) payload.getEvent()).seq;
+  }
+
+  private static class Numbered extends Event {
+    final int producer;
+    final int seq;
+
+    Numbered(int producer, int seq) {
+      super("numbered");
+      this.producer = producer;
+      this.seq = seq;
+    }
+  }
+}
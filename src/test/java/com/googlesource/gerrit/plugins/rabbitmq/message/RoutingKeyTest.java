@@ -0,0 +1,88 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.message;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Strings;
+import com.google.common.base.Suppliers;
+import com.google.gerrit.server.data.RefUpdateAttribute;
+import com.google.gerrit.server.events.RefUpdatedEvent;
+import org.junit.Test;
+
+public class RoutingKeyTest {
+
+  @Test
+  public void constantKeyIsUsedAsIs() {
+    assertThat(RoutingKey.compile("com.foobar.gerrit").get(refUpdated("p", "refs/heads/master")))
+        .isEqualTo("com.foobar.gerrit");
+  }
+
+  @Test
+  public void placeholdersAreReplacedByEventFields() {
+    RoutingKey key = RoutingKey.compile("gerrit.${type}.${project}.${branch}");
+    assertThat(key.get(refUpdated("plugins/rabbitmq", "refs/heads/master")))
+        .isEqualTo("gerrit.ref-updated.plugins/rabbitmq.master");
+  }
+
+  @Test
+  public void missingFieldsAreEmpty() {
+    RoutingKey key = RoutingKey.compile("gerrit.${change}.${type}");
+    assertThat(key.get(refUpdated("p", "refs/heads/master"))).isEqualTo("gerrit..ref-updated");
+  }
+
+  @Test
+  public void unknownPlaceholdersAreKept() {
+    RoutingKey key = RoutingKey.compile("gerrit.${unknown}.${type}");
+    assertThat(key.get(refUpdated("p", "refs/heads/master")))
+        .isEqualTo("gerrit.${unknown}.ref-updated");
+  }
+
+  @Test
+  public void dotsInValuesAreReplaced() {
+    RoutingKey key = RoutingKey.compile("gerrit.${project}.${branch}");
+    assertThat(key.get(refUpdated("com.example.app", "refs/heads/release.1")))
+        .isEqualTo("gerrit.com_example_app.release_1");
+  }
+
+  @Test
+  public void longKeysAreTruncated() {
+    RoutingKey key = RoutingKey.compile("gerrit.${project}");
+    String value = key.get(refUpdated(Strings.repeat("a", 300), "refs/heads/master"));
+    assertThat(value).hasLength(RoutingKey.MAX_LENGTH);
+    assertThat(value).startsWith("gerrit.aaa");
+  }
+
+  @Test
+  public void truncationKeepsCharactersWhole() {
+    RoutingKey key = RoutingKey.compile("${project}");
+    // 'é' takes two bytes and '😀' four, so neither fits evenly into 255 bytes.
+    String twoBytes = key.get(refUpdated(Strings.repeat("é", 200), "refs/heads/master"));
+    assertThat(twoBytes.getBytes(UTF_8)).hasLength(254);
+    String fourBytes = key.get(refUpdated(Strings.repeat("😀", 100), "refs/heads/master"));
+    assertThat(fourBytes.getBytes(UTF_8)).hasLength(252);
+    assertThat(fourBytes).isEqualTo(Strings.repeat("😀", 63));
+  }
+
+  private static RefUpdatedEvent refUpdated(String project, String refName) {
+    RefUpdatedEvent event = new RefUpdatedEvent();
+    RefUpdateAttribute refUpdate = new RefUpdateAttribute();
+    refUpdate.project = project;
+    refUpdate.refName = refName;
+    event.refUpdate = Suppliers.ofInstance(refUpdate);
+    return event;
+  }
+}
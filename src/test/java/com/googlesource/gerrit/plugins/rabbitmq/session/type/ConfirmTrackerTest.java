@@ -0,0 +1,124 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.session.type;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.events.Event;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventPayload;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventSerializer;
+import com.googlesource.gerrit.plugins.rabbitmq.message.GsonProvider;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConfirmTrackerTest {
+  private final List<EventPayload> confirmed = new ArrayList<>();
+  private final List<EventPayload> rejected = new ArrayList<>();
+  private EventSerializer serializer;
+  private ConfirmTracker tracker;
+
+  @Before
+  public void setUp() {
+    serializer = new EventSerializer(new GsonProvider().get(), new DisabledMetricMaker());
+    tracker = new ConfirmTracker(confirmed::addAll, rejected::addAll);
+  }
+
+  @Test
+  public void multipleAckConfirmsAllMessagesUpToTheTag() {
+    EventPayload p1 = track(1);
+    EventPayload p2 = track(2);
+    EventPayload p3 = track(3);
+
+    tracker.handleAck(2, true);
+
+    assertThat(confirmed).containsExactly(p1, p2).inOrder();
+    assertThat(tracker.size()).isEqualTo(1);
+    tracker.handleAck(3, false);
+    assertThat(confirmed).containsExactly(p1, p2, p3).inOrder();
+    assertThat(rejected).isEmpty();
+  }
+
+  @Test
+  public void nackHandsMessagesToRejectedHandler() {
+    EventPayload p1 = track(1);
+    EventPayload p2 = track(2);
+
+    tracker.handleNack(1, false);
+
+    assertThat(rejected).containsExactly(p1);
+    tracker.handleAck(2, false);
+    assertThat(confirmed).containsExactly(p2);
+  }
+
+  @Test
+  public void closeRejectsOutstandingMessagesInOrder() throws Exception {
+    EventPayload p1 = track(1);
+    EventPayload p2 = track(2);
+    assertThat(tracker.isClosed()).isFalse();
+
+    tracker.close();
+
+    assertThat(tracker.isClosed()).isTrue();
+    assertThat(rejected).containsExactly(p1, p2).inOrder();
+    assertThat(tracker.awaitCapacity(10, 1000)).isFalse();
+  }
+
+  @Test
+  public void removeTellsWhetherTheMessageWasStillTracked() {
+    track(1);
+    track(2);
+
+    assertThat(tracker.remove(1)).isTrue();
+    tracker.close();
+
+    assertThat(tracker.remove(2)).isFalse();
+    assertThat(rejected).hasSize(1);
+  }
+
+  @Test
+  public void awaitCapacityWaitsForConfirms() throws Exception {
+    track(1);
+    track(2);
+    assertThat(tracker.awaitCapacity(2, 10)).isFalse();
+
+    Thread acker = new Thread(() -> tracker.handleAck(1, false));
+    acker.start();
+    assertThat(tracker.awaitCapacity(2, 10000)).isTrue();
+    acker.join();
+  }
+
+  @Test
+  public void batchTrackerKeepsNackedMessagesUntilDrained() {
+    tracker = new ConfirmTracker();
+    EventPayload p1 = track(1);
+    track(2);
+    EventPayload p3 = track(3);
+
+    tracker.handleAck(2, false);
+    tracker.handleNack(3, false);
+
+    assertThat(tracker.drain()).containsExactly(p1, p3).inOrder();
+    assertThat(tracker.size()).isEqualTo(0);
+  }
+
+  private EventPayload track(long tag) {
+    EventPayload payload = serializer.wrap(new Event("test-" + tag) {});
+    tracker.add(tag, payload);
+    return payload;
+  }
+}
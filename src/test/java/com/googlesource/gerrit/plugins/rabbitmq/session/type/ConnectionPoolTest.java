@@ -0,0 +1,73 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.session.type;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.googlesource.gerrit.plugins.rabbitmq.config.Properties;
+import com.googlesource.gerrit.plugins.rabbitmq.testing.TestProperties;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ConnectionPoolTest {
+  private static final String URI = "amqp://localhost";
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final ConnectionPool pool = new ConnectionPool();
+
+  @Test
+  public void filesWithTheSameSettingsShareTheConnection() throws Exception {
+    SharedConnection first = pool.acquire(URI, load("first", "[amqp]", "  username = gerrit"));
+    SharedConnection second = pool.acquire(URI, load("second", "[amqp]", "  username = gerrit"));
+
+    assertThat(second).isSameInstanceAs(first);
+  }
+
+  @Test
+  public void filesWithOtherConnectionSettingsGetTheirOwnConnection() throws Exception {
+    SharedConnection first = pool.acquire(URI, load("first"));
+
+    assertThat(pool.acquire(URI, load("cache", "[amqp]", "  channelCacheSize = 8")))
+        .isNotSameInstanceAs(first);
+    assertThat(pool.acquire(URI, load("interval", "[monitor]", "  interval = 30000")))
+        .isNotSameInstanceAs(first);
+    assertThat(pool.acquire(URI, load("delay", "[monitor]", "  reconnectDelay = 500")))
+        .isNotSameInstanceAs(first);
+    assertThat(pool.acquire(URI, load("maxDelay", "[monitor]", "  maxReconnectDelay = 60000")))
+        .isNotSameInstanceAs(first);
+    assertThat(pool.acquire(URI, load("recovery", "[monitor]", "  automaticRecovery = true")))
+        .isNotSameInstanceAs(first);
+  }
+
+  @Test
+  public void connectionIsDroppedOnceReleasedByAllItsUsers() throws Exception {
+    Properties properties = load("first");
+    SharedConnection first = pool.acquire(URI, properties);
+    SharedConnection second = pool.acquire(URI, properties);
+
+    pool.release(first);
+    assertThat(pool.acquire(URI, properties)).isSameInstanceAs(first);
+    pool.release(second);
+    pool.release(first);
+
+    assertThat(pool.acquire(URI, properties)).isNotSameInstanceAs(first);
+  }
+
+  private Properties load(String name, String... lines) throws Exception {
+    return TestProperties.load(tmp.getRoot().toPath(), name, lines);
+  }
+}
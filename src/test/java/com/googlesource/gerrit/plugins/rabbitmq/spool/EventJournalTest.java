@@ -0,0 +1,131 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.spool;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.googlesource.gerrit.plugins.rabbitmq.spool.EventSpoolTest.patchSetCreated;
+import static com.googlesource.gerrit.plugins.rabbitmq.spool.EventSpoolTest.refUpdated;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
+
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.events.ChangeEvent;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.RefUpdatedEvent;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventPayload;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventSerializer;
+import com.googlesource.gerrit.plugins.rabbitmq.message.GsonProvider;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class EventJournalTest {
+  private static final int SEGMENT_SIZE = 64 * 1024;
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private EventSerializer serializer;
+  private Path dir;
+
+  @Before
+  public void setUp() throws Exception {
+    serializer = new EventSerializer(new GsonProvider().get(), new DisabledMetricMaker());
+    dir = tmp.getRoot().toPath().resolve("journal");
+  }
+
+  @Test
+  public void unreleasedEventsAreReplayedAfterRestart() throws Exception {
+    EventJournal journal = open();
+    List<EventPayload> appended = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      EventPayload payload = serializer.wrap(i % 2 == 0 ? patchSetCreated(i) : refUpdated(i));
+      assertThat(journal.append(payload)).isTrue();
+      appended.add(payload);
+    }
+    journal.release(appended.get(1));
+    journal.release(appended.get(2));
+    journal.sync();
+    journal.close();
+
+    List<EventPayload> replayed = new EventJournal(dir, SEGMENT_SIZE, 4, serializer).open();
+
+    assertThat(replayed).hasSize(2);
+    Event first = replayed.get(0).getEvent();
+    assertThat(((ChangeEvent) first).getChangeKey()).isEqualTo(Change.key("I0000"));
+    assertThat(replayed.get(1).getEvent()).isInstanceOf(RefUpdatedEvent.class);
+    assertThat(bodies(replayed)).containsExactly(body(appended, 0), body(appended, 3)).inOrder();
+  }
+
+  @Test
+  public void replayedEventsCanBeReleased() throws Exception {
+    EventJournal journal = open();
+    journal.append(serializer.wrap(patchSetCreated(1)));
+    journal.close();
+
+    journal = new EventJournal(dir, SEGMENT_SIZE, 4, serializer);
+    List<EventPayload> replayed = journal.open();
+    assertThat(replayed).hasSize(1);
+    journal.release(replayed.get(0));
+    journal.close();
+
+    assertThat(new EventJournal(dir, SEGMENT_SIZE, 4, serializer).open()).isEmpty();
+  }
+
+  @Test
+  public void undecodableEventIsQuarantinedNotDropped() throws Exception {
+    EventJournal journal = open();
+    journal.append(serializer.wrap(new UnknownEvent()));
+    journal.append(serializer.wrap(patchSetCreated(2)));
+    journal.close();
+
+    List<EventPayload> replayed = new EventJournal(dir, SEGMENT_SIZE, 4, serializer).open();
+
+    assertThat(replayed).hasSize(1);
+    List<Path> quarantined = new ArrayList<>();
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir.resolve("quarantine"))) {
+      ds.forEach(quarantined::add);
+    }
+    assertThat(quarantined).hasSize(1);
+    assertThat(new String(Files.readAllBytes(quarantined.get(0)), UTF_8))
+        .contains("no-such-event-type");
+  }
+
+  private static class UnknownEvent extends Event {
+    UnknownEvent() {
+      super("no-such-event-type");
+    }
+  }
+
+  private EventJournal open() throws Exception {
+    EventJournal journal = new EventJournal(dir, SEGMENT_SIZE, 4, serializer);
+    assertThat(journal.open()).isEmpty();
+    return journal;
+  }
+
+  private static String body(List<EventPayload> payloads, int i) {
+    return new String(payloads.get(i).getBody(), UTF_8);
+  }
+
+  private static List<String> bodies(List<EventPayload> payloads) {
+    return payloads.stream().map(p -> new String(p.getBody(), UTF_8)).collect(toList());
+  }
+}
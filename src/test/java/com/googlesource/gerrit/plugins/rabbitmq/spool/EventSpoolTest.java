@@ -0,0 +1,241 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.spool;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.stream.Collectors.toList;
+
+import com.google.common.base.Suppliers;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.BranchNameKey;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.gerrit.server.data.RefUpdateAttribute;
+import com.google.gerrit.server.events.ChangeEvent;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.PatchSetCreatedEvent;
+import com.google.gerrit.server.events.RefUpdatedEvent;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventPayload;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventSerializer;
+import com.googlesource.gerrit.plugins.rabbitmq.message.GsonProvider;
+import java.io.RandomAccessFile;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class EventSpoolTest {
+  private static final int SEGMENT_SIZE = 64 * 1024;
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private EventSerializer serializer;
+  private Path dir;
+
+  @Before
+  public void setUp() throws Exception {
+    serializer = new EventSerializer(new GsonProvider().get(), new DisabledMetricMaker());
+    dir = tmp.getRoot().toPath().resolve("spool");
+  }
+
+  @Test
+  public void changeEventIsRestored() throws Exception {
+    EventSpool spool = open(SEGMENT_SIZE);
+    EventPayload payload = serializer.wrap(patchSetCreated(1));
+    assertThat(spool.append(payload)).isTrue();
+    spool.close();
+
+    List<EventPayload> read = open(SEGMENT_SIZE).read(10);
+
+    assertThat(read).hasSize(1);
+    Event event = read.get(0).getEvent();
+    assertThat(event).isInstanceOf(PatchSetCreatedEvent.class);
+    assertThat(((ChangeEvent) event).getChangeKey()).isEqualTo(Change.key("I0001"));
+    assertThat(((ChangeEvent) event).change.get().number).isEqualTo(1);
+    assertThat(read.get(0).getBody()).isEqualTo(payload.getBody());
+  }
+
+  @Test
+  public void eventsAreReadInOrder() throws Exception {
+    EventSpool spool = open(SEGMENT_SIZE);
+    List<String> types = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      Event event = i % 2 == 0 ? patchSetCreated(i) : refUpdated(i);
+      types.add(event.getType());
+      spool.append(serializer.wrap(event));
+    }
+
+    assertThat(types(spool.read(3))).containsExactlyElementsIn(types.subList(0, 3)).inOrder();
+    assertThat(types(spool.read(3))).containsExactlyElementsIn(types.subList(3, 5)).inOrder();
+    assertThat(spool.read(3)).isEmpty();
+  }
+
+  @Test
+  public void unreleasedEventsAreReadAgainAfterRestart() throws Exception {
+    EventSpool spool = open(SEGMENT_SIZE);
+    for (int i = 0; i < 3; i++) {
+      spool.append(serializer.wrap(patchSetCreated(i)));
+    }
+    List<EventPayload> read = spool.read(3);
+    spool.release(read.get(0));
+    spool.close();
+
+    List<EventPayload> replayed = open(SEGMENT_SIZE).read(10);
+
+    assertThat(numbers(replayed)).containsExactly(1, 2).inOrder();
+  }
+
+  @Test
+  public void segmentsAreDeletedOnceAllEventsAreReleased() throws Exception {
+    EventSpool spool = open(1024);
+    for (int i = 0; i < 20; i++) {
+      assertThat(spool.append(serializer.wrap(patchSetCreated(i)))).isTrue();
+    }
+    assertThat(segmentCount()).isGreaterThan(1);
+
+    List<EventPayload> read = spool.read(20);
+    assertThat(read).hasSize(20);
+    assertThat(spool.isActive()).isTrue();
+    for (EventPayload payload : read) {
+      spool.release(payload);
+    }
+
+    assertThat(spool.read(20)).isEmpty();
+    assertThat(spool.isActive()).isFalse();
+    assertThat(segmentCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void corruptedRecordIsSkipped() throws Exception {
+    EventSpool spool = open(SEGMENT_SIZE);
+    int firstSize = 0;
+    for (int i = 0; i < 3; i++) {
+      EventPayload payload = serializer.wrap(patchSetCreated(i));
+      if (i == 0) {
+        firstSize = payload.getBody().length;
+      }
+      spool.append(payload);
+    }
+    spool.close();
+    try (RandomAccessFile file = new RandomAccessFile(onlySegment().toFile(), "rw")) {
+      // Damage the body of the second record.
+      long offset = 8 + firstSize + 8 + 2;
+      file.seek(offset);
+      int b = file.read();
+      file.seek(offset);
+      file.write(b ^ 0xff);
+    }
+
+    EventSpool reopened = open(SEGMENT_SIZE);
+    assertThat(numbers(reopened.read(10))).containsExactly(0, 2).inOrder();
+    assertThat(reopened.takeRestored()).isEqualTo(3);
+    assertThat(reopened.takeSkipped()).isEqualTo(1);
+  }
+
+  @Test
+  public void onlyEventsOfPreviousRunsAreCountedAsRestored() throws Exception {
+    EventSpool spool = open(SEGMENT_SIZE);
+    spool.append(serializer.wrap(patchSetCreated(0)));
+    spool.append(serializer.wrap(patchSetCreated(1)));
+    spool.close();
+
+    spool = open(SEGMENT_SIZE);
+    spool.append(serializer.wrap(patchSetCreated(2)));
+
+    assertThat(numbers(spool.read(10))).containsExactly(0, 1, 2).inOrder();
+    assertThat(spool.takeRestored()).isEqualTo(2);
+    assertThat(spool.takeRestored()).isEqualTo(0);
+  }
+
+  @Test
+  public void appendFailsWhenSpoolIsFull() throws Exception {
+    EventSpool spool = new EventSpool(dir, 512, 2, serializer);
+    spool.open();
+    int appended = 0;
+    while (spool.append(serializer.wrap(patchSetCreated(appended)))) {
+      appended++;
+    }
+    assertThat(appended).isGreaterThan(0);
+    assertThat(numbers(spool.read(100))).hasSize(appended);
+  }
+
+  private EventSpool open(int segmentSize) throws Exception {
+    EventSpool spool = new EventSpool(dir, segmentSize, 16, serializer);
+    spool.open();
+    return spool;
+  }
+
+  private int segmentCount() throws Exception {
+    int n = 0;
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*.spool")) {
+      for (Path p : ds) {
+        n++;
+      }
+    }
+    return n;
+  }
+
+  private Path onlySegment() throws Exception {
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*.spool")) {
+      return ds.iterator().next();
+    }
+  }
+
+  private static List<String> types(List<EventPayload> payloads) {
+    return payloads.stream().map(EventPayload::getType).collect(toList());
+  }
+
+  private static List<Integer> numbers(List<EventPayload> payloads) {
+    return payloads.stream()
+        .map(p -> ((ChangeEvent) p.getEvent()).change.get().number)
+        .collect(toList());
+  }
+
+  static PatchSetCreatedEvent patchSetCreated(int number) {
+    Change change =
+        new Change(
+            Change.key(String.format("I%04d", number)),
+            Change.id(number),
+            Account.id(1000),
+            BranchNameKey.create("project", "master"),
+            new Timestamp(0));
+    PatchSetCreatedEvent event = new PatchSetCreatedEvent(change);
+    ChangeAttribute attribute = new ChangeAttribute();
+    attribute.project = "project";
+    attribute.branch = "master";
+    attribute.number = number;
+    event.change = Suppliers.ofInstance(attribute);
+    return event;
+  }
+
+  static RefUpdatedEvent refUpdated(int n) {
+    RefUpdatedEvent event = new RefUpdatedEvent();
+    RefUpdateAttribute refUpdate = new RefUpdateAttribute();
+    refUpdate.project = Project.nameKey("project").get();
+    refUpdate.refName = "refs/heads/branch-" + n;
+    refUpdate.oldRev = "0000000000000000000000000000000000000000";
+    refUpdate.newRev = "1111111111111111111111111111111111111111";
+    event.refUpdate = Suppliers.ofInstance(refUpdate);
+    return event;
+  }
+}
@@ -0,0 +1,63 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.testing;
+
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.metrics.Field;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Metric maker keeping the values of the counters, all other metrics are disabled. */
+public class CountingMetricMaker extends DisabledMetricMaker {
+  private final Map<String, AtomicLong> counts = new ConcurrentHashMap<>();
+
+  /** Returns the value of the counter, summed over all its fields. */
+  public long count(String name) {
+    AtomicLong count = counts.get(name);
+    return count != null ? count.get() : 0;
+  }
+
+  @Override
+  public Counter0 newCounter(String name, Description desc) {
+    AtomicLong count = counts.computeIfAbsent(name, n -> new AtomicLong());
+    return new Counter0() {
+      @Override
+      public void incrementBy(long value) {
+        count.addAndGet(value);
+      }
+
+      @Override
+      public void remove() {}
+    };
+  }
+
+  @Override
+  public <F1> Counter1<F1> newCounter(String name, Description desc, Field<F1> field1) {
+    AtomicLong count = counts.computeIfAbsent(name, n -> new AtomicLong());
+    return new Counter1<F1>() {
+      @Override
+      public void incrementBy(F1 field, long value) {
+        count.addAndGet(value);
+      }
+
+      @Override
+      public void remove() {}
+    };
+  }
+}
@@ -0,0 +1,436 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.testing;
+
+import com.google.common.collect.ImmutableMap;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.impl.AMQContentHeader;
+import com.rabbitmq.client.impl.AMQImpl;
+import com.rabbitmq.client.impl.Frame;
+import com.rabbitmq.client.impl.LongStringHelper;
+import com.rabbitmq.client.impl.Method;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * AMQP 0-9-1 broker standing in for RabbitMQ in tests, listening on the loopback interface. It
+ * speaks the part of the protocol the publisher uses, with the codec of the client library:
+ * connection negotiation, channels, publisher confirms, {@code connection.blocked} notifications
+ * and forced disconnects.
+ *
+ * <p>Published messages are not routed but handed to a listener. In confirm mode, they are acked
+ * unless the acceptor rejects them, in which case they are nacked and not handed to the listener.
+ * Acks are sent with the {@code multiple} flag once the broker has read all the frames the client
+ * sent so far, as RabbitMQ does under load.
+ *
+ * <p>While blocked, the broker stops reading from a connection once it publishes, as RabbitMQ does
+ * during a resource alarm.
+ */
+public class FakeBroker implements AutoCloseable {
+  private static final byte[] PROTOCOL_HEADER = {'A', 'M', 'Q', 'P', 0, 0, 9, 1};
+  private static final int CHANNEL_MAX = 2047;
+  private static final int FRAME_MAX = 131072;
+
+  /** Message published to the broker. */
+  public static class Message {
+    public final String exchange;
+    public final String routingKey;
+    public final AMQP.BasicProperties properties;
+    public final byte[] body;
+    /** Value of {@link System#nanoTime()} when the broker got the whole message. */
+    public final long receivedAt;
+
+    Message(
+        String exchange,
+        String routingKey,
+        AMQP.BasicProperties properties,
+        byte[] body,
+        long receivedAt) {
+      this.exchange = exchange;
+      this.routingKey = routingKey;
+      this.properties = properties;
+      this.body = body;
+      this.receivedAt = receivedAt;
+    }
+  }
+
+  private final ServerSocket server;
+  private final Set<ClientConnection> connections = ConcurrentHashMap.newKeySet();
+  private final AtomicLong received = new AtomicLong();
+  private volatile Consumer<Message> listener = message -> {};
+  private volatile Predicate<Message> acceptor = message -> true;
+  private volatile String blockedReason;
+  private volatile boolean closed;
+
+  /** Starts listening on an ephemeral port of the loopback interface. */
+  public FakeBroker() throws IOException {
+    server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    Thread thread = new Thread(this::accept, "FakeBroker-" + server.getLocalPort());
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /** Returns the URI to set in {@code amqp.uri} to connect to this broker. */
+  public String getUri() {
+    return "amqp://127.0.0.1:" + server.getLocalPort();
+  }
+
+  /** Sets the listener called from the connection threads with each accepted message. */
+  public void setListener(Consumer<Message> listener) {
+    this.listener = listener;
+  }
+
+  /** Sets the predicate deciding whether a message is acked or nacked in confirm mode. */
+  public void setAcceptor(Predicate<Message> acceptor) {
+    this.acceptor = acceptor;
+  }
+
+  /** Returns the number of messages accepted since the broker started. */
+  public long getReceivedCount() {
+    return received.get();
+  }
+
+  /** Returns the number of connections currently open. */
+  public int getConnectionCount() {
+    return connections.size();
+  }
+
+  /** Tells the clients that publishing is blocked and stops reading the messages they publish. */
+  public void block(String reason) {
+    synchronized (this) {
+      blockedReason = reason;
+    }
+    for (ClientConnection c : connections) {
+      c.sendQuietly(0, new AMQImpl.Connection.Blocked(reason));
+    }
+  }
+
+  /** Tells the clients that publishing is unblocked and reads their messages again. */
+  public void unblock() {
+    synchronized (this) {
+      blockedReason = null;
+      notifyAll();
+    }
+    for (ClientConnection c : connections) {
+      c.sendQuietly(0, new AMQImpl.Connection.Unblocked());
+    }
+  }
+
+  /**
+   * Closes all the connections as an administrator would, without confirming the messages received
+   * since the last acks were sent.
+   */
+  public void disconnect() {
+    for (ClientConnection c : connections) {
+      c.forceClose();
+    }
+    synchronized (this) {
+      notifyAll();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    server.close();
+    for (ClientConnection c : connections) {
+      c.closeSocket();
+    }
+    synchronized (this) {
+      notifyAll();
+    }
+  }
+
+  private void accept() {
+    while (!closed) {
+      try {
+        Socket socket = server.accept();
+        socket.setTcpNoDelay(true);
+        ClientConnection c = new ClientConnection(socket);
+        connections.add(c);
+        Thread thread = new Thread(c, "FakeBroker-connection-" + socket.getPort());
+        thread.setDaemon(true);
+        thread.start();
+      } catch (IOException e) {
+        // The broker was closed.
+      }
+    }
+  }
+
+  /** Delivery tags of a channel, only used by the thread of its connection. */
+  private static class ChannelState {
+    boolean confirm;
+    long deliveryTag;
+    long pendingAck;
+  }
+
+  private class ClientConnection implements Runnable {
+    final Socket socket;
+    final DataInputStream in;
+    final DataOutputStream out;
+    final Map<Integer, ChannelState> channels = new HashMap<>();
+    volatile boolean closing;
+
+    ClientConnection(Socket socket) throws IOException {
+      this.socket = socket;
+      this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    @Override
+    public void run() {
+      try {
+        negotiate();
+        while (true) {
+          Frame frame = readFrame();
+          if (frame.type == AMQP.FRAME_METHOD) {
+            if (!handle(frame.channel, AMQImpl.readMethodFrom(frame.getInputStream()))) {
+              return;
+            }
+          } else if (!closing) {
+            throw new IOException("Unexpected frame " + frame);
+          }
+          if (in.available() == 0) {
+            flushAcks();
+          }
+        }
+      } catch (IOException e) {
+        // Closed by either side.
+      } finally {
+        connections.remove(this);
+        closeSocket();
+      }
+    }
+
+    private void negotiate() throws IOException {
+      byte[] header = new byte[PROTOCOL_HEADER.length];
+      in.readFully(header);
+      if (!Arrays.equals(header, PROTOCOL_HEADER)) {
+        out.write(PROTOCOL_HEADER);
+        out.flush();
+        throw new IOException("Unsupported protocol header " + Arrays.toString(header));
+      }
+      send(
+          0,
+          new AMQImpl.Connection.Start(
+              0,
+              9,
+              ImmutableMap.of(
+                  "product",
+                  "FakeBroker",
+                  "capabilities",
+                  ImmutableMap.of(
+                      "publisher_confirms", true, "basic.nack", true, "connection.blocked", true)),
+              LongStringHelper.asLongString("PLAIN"),
+              LongStringHelper.asLongString("en_US")));
+      expect(AMQImpl.Connection.StartOk.class);
+      send(0, new AMQImpl.Connection.Tune(CHANNEL_MAX, FRAME_MAX, 0));
+      expect(AMQImpl.Connection.TuneOk.class);
+      expect(AMQImpl.Connection.Open.class);
+      send(0, new AMQImpl.Connection.OpenOk(""));
+      String reason = blockedReason;
+      if (reason != null) {
+        send(0, new AMQImpl.Connection.Blocked(reason));
+      }
+    }
+
+    /** Handles a method sent by the client, returning false once the connection is closed. */
+    private boolean handle(int channel, Method method) throws IOException {
+      if (method instanceof AMQImpl.Connection.Close) {
+        send(0, new AMQImpl.Connection.CloseOk());
+        return false;
+      } else if (method instanceof AMQImpl.Connection.CloseOk) {
+        return false;
+      } else if (closing) {
+        // Everything but the reply to the close is discarded meanwhile.
+      } else if (method instanceof AMQImpl.Channel.Open) {
+        channels.put(channel, new ChannelState());
+        send(channel, new AMQImpl.Channel.OpenOk(LongStringHelper.asLongString("")));
+      } else if (method instanceof AMQImpl.Channel.Close) {
+        channels.remove(channel);
+        send(channel, new AMQImpl.Channel.CloseOk());
+      } else if (method instanceof AMQImpl.Confirm.Select) {
+        channels.get(channel).confirm = true;
+        if (!((AMQImpl.Confirm.Select) method).getNowait()) {
+          send(channel, new AMQImpl.Confirm.SelectOk());
+        }
+      } else if (method instanceof AMQImpl.Basic.Publish) {
+        publish(channel, (AMQImpl.Basic.Publish) method);
+      } else {
+        send(
+            0,
+            new AMQImpl.Connection.Close(
+                AMQP.NOT_IMPLEMENTED,
+                "NOT_IMPLEMENTED - " + method.protocolMethodName(),
+                method.protocolClassId(),
+                method.protocolMethodId()));
+        closing = true;
+      }
+      return true;
+    }
+
+    private void publish(int channel, AMQImpl.Basic.Publish publish) throws IOException {
+      awaitUnblocked();
+      Frame frame = readFrame();
+      if (frame.type != AMQP.FRAME_HEADER) {
+        throw new IOException("Expected content header, got " + frame);
+      }
+      AMQContentHeader header = AMQImpl.readContentHeaderFrom(frame.getInputStream());
+      byte[] body = new byte[(int) header.getBodySize()];
+      int size = 0;
+      while (size < body.length) {
+        frame = readFrame();
+        if (frame.type != AMQP.FRAME_BODY) {
+          throw new IOException("Expected content body, got " + frame);
+        }
+        byte[] payload = frame.getPayload();
+        System.arraycopy(payload, 0, body, size, payload.length);
+        size += payload.length;
+      }
+      if (closing) {
+        return;
+      }
+      Message message =
+          new Message(
+              publish.getExchange(),
+              publish.getRoutingKey(),
+              (AMQP.BasicProperties) header,
+              body,
+              System.nanoTime());
+      boolean accepted = acceptor.test(message);
+      if (accepted) {
+        received.incrementAndGet();
+        listener.accept(message);
+      }
+      ChannelState state = channels.get(channel);
+      if (state != null && state.confirm) {
+        long tag = ++state.deliveryTag;
+        if (accepted) {
+          state.pendingAck = tag;
+        } else {
+          flushAck(channel, state);
+          send(channel, new AMQImpl.Basic.Nack(tag, false, false));
+        }
+      }
+    }
+
+    /** Waits until the broker is unblocked, confirming the messages received meanwhile. */
+    private void awaitUnblocked() throws IOException {
+      if (blockedReason == null) {
+        return;
+      }
+      flushAcks();
+      synchronized (FakeBroker.this) {
+        while (blockedReason != null && !closing && !closed) {
+          try {
+            FakeBroker.this.wait();
+          } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+          }
+        }
+      }
+    }
+
+    private void flushAcks() throws IOException {
+      for (Map.Entry<Integer, ChannelState> e : channels.entrySet()) {
+        flushAck(e.getKey(), e.getValue());
+      }
+    }
+
+    private void flushAck(int channel, ChannelState state) throws IOException {
+      if (state.pendingAck > 0) {
+        send(channel, new AMQImpl.Basic.Ack(state.pendingAck, true));
+        state.pendingAck = 0;
+      }
+    }
+
+    private void expect(Class<? extends Method> type) throws IOException {
+      Frame frame = readFrame();
+      Method method =
+          frame.type == AMQP.FRAME_METHOD ? AMQImpl.readMethodFrom(frame.getInputStream()) : null;
+      if (!type.isInstance(method)) {
+        throw new IOException("Expected " + type.getSimpleName() + ", got " + frame);
+      }
+    }
+
+    /** Reads the next frame, answering heartbeats. */
+    private Frame readFrame() throws IOException {
+      while (true) {
+        Frame frame = Frame.readFrom(in);
+        if (frame == null) {
+          continue;
+        }
+        if (frame.type != AMQP.FRAME_HEARTBEAT) {
+          return frame;
+        }
+        synchronized (out) {
+          new Frame(AMQP.FRAME_HEARTBEAT, 0).writeTo(out);
+          out.flush();
+        }
+      }
+    }
+
+    void send(int channel, Method method) throws IOException {
+      Frame frame = method.toFrame(channel);
+      synchronized (out) {
+        frame.writeTo(out);
+        out.flush();
+      }
+    }
+
+    void sendQuietly(int channel, Method method) {
+      try {
+        send(channel, method);
+      } catch (IOException e) {
+        // The connection is closing.
+      }
+    }
+
+    /** Closes the connection on the broker side, waiting for the client to confirm. */
+    void forceClose() {
+      closing = true;
+      sendQuietly(
+          0,
+          new AMQImpl.Connection.Close(
+              AMQP.CONNECTION_FORCED,
+              "CONNECTION_FORCED - broker forced connection closure with reason 'shutdown'",
+              0,
+              0));
+    }
+
+    void closeSocket() {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // Already closed.
+      }
+    }
+  }
+}
@@ -0,0 +1,172 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.testing;
+
+import com.googlesource.gerrit.plugins.rabbitmq.config.Properties;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventPayload;
+import com.googlesource.gerrit.plugins.rabbitmq.message.PayloadFormat;
+import com.googlesource.gerrit.plugins.rabbitmq.message.PublisherMetrics;
+import com.googlesource.gerrit.plugins.rabbitmq.session.Session;
+import com.googlesource.gerrit.plugins.rabbitmq.session.SessionFactory;
+import com.googlesource.gerrit.plugins.rabbitmq.session.SessionFactoryProvider;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Session standing in for the broker in publisher tests. Published payloads are confirmed at once,
+ * unless a {@link Broker} is set to decide what happens to them.
+ */
+public class FakeSession implements Session {
+
+  /** Decides the fate of the payloads published while the session is open. */
+  public interface Broker {
+    /** Returns the payloads that were not published, as {@link Session#publish} does. */
+    List<EventPayload> publish(FakeSession session, int channel, List<EventPayload> payloads);
+  }
+
+  private final List<EventPayload> confirmed = new ArrayList<>();
+  private volatile boolean open = true;
+  private volatile boolean blocked;
+  private volatile Broker broker =
+      (session, channel, payloads) -> {
+        session.confirm(payloads);
+        return Collections.emptyList();
+      };
+  private volatile Consumer<List<EventPayload>> confirmedHandler;
+  private volatile Consumer<List<EventPayload>> rejectedHandler;
+  private volatile Runnable connectedHandler;
+
+  /** Returns a provider of a session factory creating this session. */
+  public SessionFactoryProvider provider() {
+    SessionFactory factory =
+        new SessionFactory() {
+          @Override
+          public Session create(Properties properties) {
+            return FakeSession.this;
+          }
+        };
+    return new SessionFactoryProvider() {
+      @Override
+      public SessionFactory get() {
+        return factory;
+      }
+    };
+  }
+
+  public void setBroker(Broker broker) {
+    this.broker = broker;
+  }
+
+  /** Opens or closes the session, calling the connected handler when it is opened. */
+  public void setOpen(boolean open) {
+    this.open = open;
+    Runnable handler = connectedHandler;
+    if (open && handler != null) {
+      handler.run();
+    }
+  }
+
+  public void setBlocked(boolean blocked) {
+    this.blocked = blocked;
+  }
+
+  /** Confirms the payloads as the broker would. */
+  public void confirm(List<EventPayload> payloads) {
+    confirmedHandler.accept(payloads);
+    synchronized (confirmed) {
+      confirmed.addAll(payloads);
+      confirmed.notifyAll();
+    }
+  }
+
+  /** Rejects the payloads as the broker would, e.g. when the channel is closed. */
+  public void reject(List<EventPayload> payloads) {
+    rejectedHandler.accept(payloads);
+  }
+
+  /** Returns the payloads confirmed so far, in the order they were confirmed. */
+  public List<EventPayload> getConfirmed() {
+    synchronized (confirmed) {
+      return new ArrayList<>(confirmed);
+    }
+  }
+
+  /**
+   * Waits until at least {@code count} payloads were confirmed.
+   *
+   * @return the confirmed payloads, fewer than {@code count} if the timeout elapsed.
+   */
+  public List<EventPayload> awaitConfirmed(int count, long timeoutMs) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    synchronized (confirmed) {
+      long remaining;
+      while (confirmed.size() < count && (remaining = deadline - System.currentTimeMillis()) > 0) {
+        confirmed.wait(remaining);
+      }
+      return new ArrayList<>(confirmed);
+    }
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public boolean isBlocked() {
+    return blocked;
+  }
+
+  @Override
+  public boolean connect() {
+    return open;
+  }
+
+  @Override
+  public void disconnect() {
+    open = false;
+  }
+
+  @Override
+  public void setPayloadFormat(PayloadFormat format) {}
+
+  @Override
+  public void setMetrics(PublisherMetrics.Recorder metrics) {}
+
+  @Override
+  public void setConnectedHandler(Runnable handler) {
+    this.connectedHandler = handler;
+  }
+
+  @Override
+  public List<EventPayload> publish(int channel, List<EventPayload> payloads) {
+    if (!open) {
+      return payloads;
+    }
+    return broker.publish(this, channel, payloads);
+  }
+
+  @Override
+  public void setConfirmedHandler(Consumer<List<EventPayload>> handler) {
+    this.confirmedHandler = handler;
+  }
+
+  @Override
+  public void setRejectedHandler(Consumer<List<EventPayload>> handler) {
+    this.rejectedHandler = handler;
+  }
+}
@@ -0,0 +1,357 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.testing;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import com.google.gerrit.server.events.Event;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventSerializer;
+import com.googlesource.gerrit.plugins.rabbitmq.message.GsonProvider;
+import com.googlesource.gerrit.plugins.rabbitmq.message.MessagePublisher;
+import com.googlesource.gerrit.plugins.rabbitmq.message.PublisherMetrics;
+import com.googlesource.gerrit.plugins.rabbitmq.session.SessionFactoryProvider;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+
+/**
+ * Publishes events at a fixed rate through a {@link MessagePublisher} connected to a {@link
+ * FakeBroker}, and reports the throughput, the latency from the time each event was due to the time
+ * the broker got it, and the events lost on the way.
+ *
+ * <p>Events are due at fixed intervals whether or not the previous ones went through, so that a
+ * stalled publisher shows in the latencies rather than slowing the load down. Faults, such as the
+ * broker blocking publishing or dropping the connections, can be scheduled during the run.
+ *
+ * <p>Each event is tagged with its sequence number in {@code eventCreatedOn}, which is read back
+ * from the message body: the messages must be published as JSON, without compression.
+ */
+public class LoadGenerator {
+  private static final String CREATED_ON = "\"eventCreatedOn\":";
+  private static final long DRAIN_TIMEOUT_MS = 60_000;
+
+  /** Outcome of a run. */
+  public static class Report {
+    public long events;
+    public long enqueued;
+    public long published;
+    public long dropped;
+    public long received;
+    public long duplicates;
+    public long lost;
+    public long elapsedNanos;
+    public long p50Nanos;
+    public long p99Nanos;
+    public long p999Nanos;
+
+    /** Returns the number of events the broker received per second. */
+    public double throughput() {
+      return elapsedNanos > 0 ? received * 1e9 / elapsedNanos : 0;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "events: %d, enqueued: %d, published: %d, dropped: %d%n"
+              + "received: %d, duplicates: %d, lost: %d%n"
+              + "throughput: %.0f events/s over %d ms%n"
+              + "latency: p50 %.3f ms, p99 %.3f ms, p999 %.3f ms",
+          events,
+          enqueued,
+          published,
+          dropped,
+          received,
+          duplicates,
+          lost,
+          throughput(),
+          NANOSECONDS.toMillis(elapsedNanos),
+          p50Nanos / 1e6,
+          p99Nanos / 1e6,
+          p999Nanos / 1e6);
+    }
+  }
+
+  private static class Fault {
+    final long offsetNanos;
+    final Runnable action;
+
+    Fault(long offsetNanos, Runnable action) {
+      this.offsetNanos = offsetNanos;
+      this.action = action;
+    }
+  }
+
+  private final FakeBroker broker;
+  private final CountingMetricMaker metrics = new CountingMetricMaker();
+  private final EventSerializer serializer;
+  private final MessagePublisher publisher;
+  private final List<Fault> faults = new ArrayList<>();
+  private long drainTimeoutMs = DRAIN_TIMEOUT_MS;
+
+  /**
+   * Creates the publisher of a configuration connecting to the broker, with its files in the
+   * directory.
+   */
+  public LoadGenerator(FakeBroker broker, Path dir, String... config) throws IOException {
+    this.broker = broker;
+    List<String> lines = new ArrayList<>(Arrays.asList("[amqp]", "  uri = " + broker.getUri()));
+    lines.addAll(Arrays.asList(config));
+    this.serializer = new EventSerializer(new GsonProvider().get(), metrics);
+    Path data = dir.resolve("data");
+    Files.createDirectories(data);
+    this.publisher =
+        new MessagePublisher(
+            TestProperties.load(dir, "load", lines.toArray(new String[0])),
+            data.toFile(),
+            new SessionFactoryProvider(),
+            serializer,
+            new PublisherMetrics(metrics),
+            ImmutableMap.of());
+  }
+
+  /** Returns the metrics of the publisher. */
+  public CountingMetricMaker getMetrics() {
+    return metrics;
+  }
+
+  /** Returns the serializer of the publisher, e.g. to read events. */
+  public EventSerializer getSerializer() {
+    return serializer;
+  }
+
+  /** Runs the action once the events due after the offset from the start of the run are sent. */
+  public LoadGenerator at(long offsetMs, Runnable action) {
+    faults.add(new Fault(MILLISECONDS.toNanos(offsetMs), action));
+    return this;
+  }
+
+  /** Sets how long to wait for the publisher to settle all the events after sending them. */
+  public LoadGenerator setDrainTimeout(long timeoutMs) {
+    this.drainTimeoutMs = timeoutMs;
+    return this;
+  }
+
+  /**
+   * Sends the events at the rate, waits until the publisher settled all of them and stops it.
+   *
+   * @param events returns the event of each sequence number, a new instance every time.
+   */
+  public Report run(IntFunction<Event> events, int count, int rate) throws InterruptedException {
+    long interval = SECONDS.toNanos(1) / rate;
+    long[] due = new long[count];
+    AtomicLongArray latencies = new AtomicLongArray(count);
+    AtomicIntegerArray copies = new AtomicIntegerArray(count);
+    AtomicLong lastReceived = new AtomicLong();
+    broker.setListener(
+        message -> {
+          int sequence = sequence(message.body);
+          if (sequence >= 0 && sequence < count && copies.getAndIncrement(sequence) == 0) {
+            latencies.set(sequence, message.receivedAt - due[sequence]);
+            lastReceived.accumulateAndGet(message.receivedAt, Math::max);
+          }
+        });
+    faults.sort(Comparator.comparingLong(f -> f.offsetNanos));
+    int nextFault = 0;
+
+    publisher.start();
+    long start = System.nanoTime();
+    for (int i = 0; i < count; i++) {
+      long dueAt = start + i * interval;
+      while (nextFault < faults.size() && faults.get(nextFault).offsetNanos <= dueAt - start) {
+        faults.get(nextFault++).action.run();
+      }
+      long wait = dueAt - System.nanoTime();
+      if (wait > 0) {
+        LockSupport.parkNanos(wait);
+      }
+      Event event = events.apply(i);
+      event.eventCreatedOn = i;
+      due[i] = dueAt;
+      publisher.onEvent(serializer.wrap(event));
+    }
+    for (; nextFault < faults.size(); nextFault++) {
+      Fault fault = faults.get(nextFault);
+      long wait = start + fault.offsetNanos - System.nanoTime();
+      if (wait > 0) {
+        NANOSECONDS.sleep(wait);
+      }
+      fault.action.run();
+    }
+
+    long deadline = System.nanoTime() + MILLISECONDS.toNanos(drainTimeoutMs);
+    while (!isSettled() && System.nanoTime() < deadline) {
+      MILLISECONDS.sleep(10);
+    }
+    publisher.stop();
+
+    Report report = new Report();
+    report.events = count;
+    report.enqueued = metrics.count("publisher/enqueued_count");
+    report.published = metrics.count("publisher/published_count");
+    report.dropped = metrics.count("publisher/dropped_count");
+    long[] received = new long[count];
+    for (int i = 0; i < count; i++) {
+      int n = copies.get(i);
+      if (n > 0) {
+        received[(int) report.received++] = latencies.get(i);
+        report.duplicates += n - 1;
+      }
+    }
+    report.lost = count - report.received;
+    report.elapsedNanos = report.received > 0 ? lastReceived.get() - start : 0;
+    long[] sorted = Arrays.copyOf(received, (int) report.received);
+    Arrays.sort(sorted);
+    report.p50Nanos = percentile(sorted, 0.5);
+    report.p99Nanos = percentile(sorted, 0.99);
+    report.p999Nanos = percentile(sorted, 0.999);
+    return report;
+  }
+
+  /** Returns true once every enqueued event was either published or dropped. */
+  private boolean isSettled() {
+    return metrics.count("publisher/published_count") + metrics.count("publisher/dropped_count")
+        >= metrics.count("publisher/enqueued_count");
+  }
+
+  private static long percentile(long[] sorted, double p) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+  }
+
+  /** Returns the sequence number of the event in a JSON message body, or -1 if there is none. */
+  public static int sequence(byte[] body) {
+    String json = new String(body, UTF_8);
+    int i = json.indexOf(CREATED_ON);
+    if (i < 0) {
+      return -1;
+    }
+    i += CREATED_ON.length();
+    int end = i;
+    while (end < json.length() && Character.isDigit(json.charAt(end))) {
+      end++;
+    }
+    return end > i ? Integer.parseInt(json.substring(i, end)) : -1;
+  }
+
+  /**
+   * Runs the load against a broker started in the same process and prints the report.
+   *
+   * <pre>
+   * --rate N            events per second, 10000 by default
+   * --duration S        seconds to send events for, 30 by default
+   * --log FILE          replays the events of a stream-events log, in a loop
+   * --set S.K=V         sets the key of a section of the publisher configuration
+   * --block S:D         blocks publishing after S seconds, for D seconds
+   * --disconnect S      drops the connections after S seconds
+   * </pre>
+   */
+  public static void main(String[] args) throws Exception {
+    int rate = 10_000;
+    int duration = 30;
+    Path log = null;
+    List<String> config = new ArrayList<>();
+    List<String> blocks = new ArrayList<>();
+    List<String> disconnects = new ArrayList<>();
+    boolean confirm = false;
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      if (i + 1 == args.length) {
+        throw new IllegalArgumentException("Missing value of " + arg);
+      }
+      String value = args[++i];
+      switch (arg) {
+        case "--rate":
+          rate = Integer.parseInt(value);
+          break;
+        case "--duration":
+          duration = Integer.parseInt(value);
+          break;
+        case "--log":
+          log = Paths.get(value);
+          break;
+        case "--set":
+          int dot = value.indexOf('.');
+          int eq = value.indexOf('=');
+          if (dot < 0 || eq < dot) {
+            throw new IllegalArgumentException("Expected section.key=value, got " + value);
+          }
+          config.add("[" + value.substring(0, dot) + "]");
+          config.add("  " + value.substring(dot + 1, eq) + " = " + value.substring(eq + 1));
+          confirm |= value.startsWith("publish.confirm=");
+          break;
+        case "--block":
+          blocks.add(value);
+          break;
+        case "--disconnect":
+          disconnects.add(value);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option " + arg);
+      }
+    }
+    if (!confirm) {
+      // Without confirms, events lost in the socket buffers are counted as published.
+      config.add("[publish]");
+      config.add("  confirm = stream");
+    }
+
+    Path dir = Files.createTempDirectory("rabbitmq-load");
+    try (FakeBroker broker = new FakeBroker()) {
+      LoadGenerator generator = new LoadGenerator(broker, dir, config.toArray(new String[0]));
+      for (String block : blocks) {
+        String[] times = block.split(":", 2);
+        long at = SECONDS.toMillis(Long.parseLong(times[0]));
+        generator.at(at, () -> broker.block("load generator"));
+        generator.at(at + SECONDS.toMillis(Long.parseLong(times[1])), broker::unblock);
+      }
+      for (String disconnect : disconnects) {
+        generator.at(SECONDS.toMillis(Long.parseLong(disconnect)), broker::disconnect);
+      }
+      // Spread over the workers as the events of different changes.
+      IntFunction<Event> events = i -> TestEvents.patchSetCreated(i + 1);
+      if (log != null) {
+        List<byte[]> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(log, UTF_8)) {
+          if (!line.trim().isEmpty()) {
+            lines.add(line.getBytes(UTF_8));
+          }
+        }
+        EventSerializer serializer = generator.getSerializer();
+        events = i -> serializer.deserialize(lines.get(i % lines.size())).getEvent();
+      }
+      System.out.println(generator.run(events, rate * duration, rate));
+    } finally {
+      MoreFiles.deleteRecursively(dir, RecursiveDeleteOption.ALLOW_INSECURE);
+    }
+  }
+}
@@ -0,0 +1,74 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.testing;
+
+import com.google.common.base.Suppliers;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.BranchNameKey;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.gerrit.server.data.RefUpdateAttribute;
+import com.google.gerrit.server.events.ChangeEvent;
+import com.google.gerrit.server.events.PatchSetCreatedEvent;
+import com.google.gerrit.server.events.RefUpdatedEvent;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventPayload;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/** Builds the stream events used by the tests. */
+public final class TestEvents {
+
+  public static PatchSetCreatedEvent patchSetCreated(int number) {
+    return patchSetCreated("project", "master", number);
+  }
+
+  public static PatchSetCreatedEvent patchSetCreated(String project, String branch, int number) {
+    Change change =
+        new Change(
+            Change.key(String.format("I%04d", number)),
+            Change.id(number),
+            Account.id(1000),
+            BranchNameKey.create(project, branch),
+            new Timestamp(0));
+    PatchSetCreatedEvent event = new PatchSetCreatedEvent(change);
+    ChangeAttribute attribute = new ChangeAttribute();
+    attribute.project = project;
+    attribute.branch = branch;
+    attribute.number = number;
+    event.change = Suppliers.ofInstance(attribute);
+    return event;
+  }
+
+  public static RefUpdatedEvent refUpdated(String project, String refName) {
+    RefUpdatedEvent event = new RefUpdatedEvent();
+    RefUpdateAttribute refUpdate = new RefUpdateAttribute();
+    refUpdate.project = project;
+    refUpdate.refName = refName;
+    refUpdate.oldRev = "0000000000000000000000000000000000000000";
+    refUpdate.newRev = "1111111111111111111111111111111111111111";
+    event.refUpdate = Suppliers.ofInstance(refUpdate);
+    return event;
+  }
+
+  /** Returns the change numbers of the payloads, which must hold change events. */
+  public static List<Integer> numbers(List<EventPayload> payloads) {
+    return payloads.stream()
+        .map(p -> ((ChangeEvent) p.getEvent()).change.get().number)
+        .collect(Collectors.toList());
+  }
+
+  private TestEvents() {}
+}
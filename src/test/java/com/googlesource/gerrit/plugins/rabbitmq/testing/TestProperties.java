@@ -0,0 +1,73 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.testing;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.googlesource.gerrit.plugins.rabbitmq.config.PluginProperties;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.AMQP;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Coalesce;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Exchange;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Filter;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Gerrit;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Journal;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Message;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Monitor;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Publish;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Queue;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Section;
+import com.googlesource.gerrit.plugins.rabbitmq.config.section.Spool;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.eclipse.jgit.lib.Config;
+
+/** Loads the properties of a publisher from configuration lines, as the plugin would. */
+public final class TestProperties {
+
+  /**
+   * Writes the lines to {@code <name>.config} in the directory and loads it with all the sections
+   * of the plugin.
+   */
+  public static PluginProperties load(Path dir, String name, String... lines) throws IOException {
+    Path file = dir.resolve(name + ".config");
+    Files.write(file, Arrays.asList(lines), UTF_8);
+    PluginProperties properties = new PluginProperties(sections(), file);
+    properties.load();
+    return properties;
+  }
+
+  /** Returns new instances of the sections bound by the plugin module. */
+  public static Set<Section> sections() {
+    return new HashSet<>(
+        Arrays.asList(
+            new AMQP(),
+            new Coalesce(),
+            new Exchange(),
+            new Filter(),
+            new Gerrit(new Config()),
+            new Journal(),
+            new Message(),
+            new Monitor(),
+            new Publish(),
+            new Queue(),
+            new Spool()));
+  }
+
+  private TestProperties() {}
+}
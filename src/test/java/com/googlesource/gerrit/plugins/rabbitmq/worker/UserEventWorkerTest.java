@@ -0,0 +1,207 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.worker;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.googlesource.gerrit.plugins.rabbitmq.testing.TestEvents.patchSetCreated;
+
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.extensions.registration.DynamicSet;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.account.GroupMembership;
+import com.google.gerrit.server.config.AllUsersName;
+import com.google.gerrit.server.events.EventListener;
+import com.google.gerrit.server.events.UserScopedEventListener;
+import com.google.gerrit.server.permissions.PermissionBackend;
+import com.googlesource.gerrit.plugins.rabbitmq.config.Properties;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventPayload;
+import com.googlesource.gerrit.plugins.rabbitmq.message.EventSerializer;
+import com.googlesource.gerrit.plugins.rabbitmq.message.GsonProvider;
+import com.googlesource.gerrit.plugins.rabbitmq.message.Publisher;
+import com.googlesource.gerrit.plugins.rabbitmq.testing.TestProperties;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UserEventWorkerTest {
+  private static final String PLUGIN = "rabbitmq";
+  private static final String[] CACHED = {
+    "[gerrit]", "  listenAsCacheSize = 1024", "  listenAsCacheTtl = 60000"
+  };
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final DynamicSet<UserScopedEventListener> userListeners = new DynamicSet<>();
+  private final DynamicSet<EventListener> unrestrictedListeners = new DynamicSet<>();
+  private final CurrentUser alice = user(1000);
+  private final CurrentUser bob = user(1001);
+  private UserEventWorker worker;
+  private int files;
+
+  @Before
+  public void setUp() {
+    worker =
+        new UserEventWorker(
+            userListeners,
+            unrestrictedListeners,
+            null,
+            null,
+            null,
+            null,
+            new EventSerializer(new GsonProvider().get(), new DisabledMetricMaker()),
+            new FakePermissionBackend(),
+            null,
+            null,
+            new AllUsersName("All-Users"));
+  }
+
+  @Test
+  public void publishersOfTheSameUserShareOneListener() throws Exception {
+    RecordingPublisher first = publisher();
+    RecordingPublisher second = publisher();
+
+    worker.add(PLUGIN, first, alice);
+    worker.add(PLUGIN, second, alice);
+
+    assertThat(userListeners.stream().count()).isEqualTo(1);
+    assertThat(unrestrictedListeners.stream().count()).isEqualTo(0);
+    assertThat(userListeners.iterator().next().getUser()).isSameInstanceAs(alice);
+    userListeners.iterator().next().onEvent(patchSetCreated(1));
+    assertThat(first.received).hasSize(1);
+    assertThat(second.received).hasSize(1);
+    // Serialized once for the whole group.
+    assertThat(second.received.get(0)).isSameInstanceAs(first.received.get(0));
+  }
+
+  @Test
+  public void publishersOfOtherUsersGetTheirOwnListener() throws Exception {
+    worker.add(PLUGIN, publisher(), alice);
+    worker.add(PLUGIN, publisher(), bob);
+
+    assertThat(userListeners.stream().count()).isEqualTo(2);
+  }
+
+  @Test
+  public void publishersWithTheSameCacheOptionsShareOneCachingListener() throws Exception {
+    worker.add(PLUGIN, publisher(CACHED), alice);
+    worker.add(PLUGIN, publisher(CACHED), alice);
+
+    assertThat(unrestrictedListeners.stream().count()).isEqualTo(1);
+    assertThat(userListeners.stream().count()).isEqualTo(0);
+  }
+
+  @Test
+  public void cacheOptionsSplitTheGroups() throws Exception {
+    worker.add(PLUGIN, publisher(), alice);
+    worker.add(PLUGIN, publisher(CACHED), alice);
+    worker.add(PLUGIN, publisher("[gerrit]", "  listenAsCacheSize = 16"), alice);
+    worker.add(
+        PLUGIN,
+        publisher("[gerrit]", "  listenAsCacheSize = 16", "  listenAsCacheTtl = 1000"),
+        alice);
+
+    // A cache without a size or without a time to live is disabled.
+    assertThat(userListeners.stream().count()).isEqualTo(1);
+    assertThat(unrestrictedListeners.stream().count()).isEqualTo(2);
+  }
+
+  @Test
+  public void listenerIsRemovedWithTheLastPublisherOfTheGroup() throws Exception {
+    RecordingPublisher first = publisher();
+    RecordingPublisher second = publisher();
+    worker.add(PLUGIN, first, alice);
+    worker.add(PLUGIN, second, alice);
+
+    worker.removePublisher(first);
+    assertThat(userListeners.stream().count()).isEqualTo(1);
+    userListeners.iterator().next().onEvent(patchSetCreated(1));
+    assertThat(first.received).isEmpty();
+    assertThat(second.received).hasSize(1);
+
+    worker.removePublisher(second);
+    assertThat(userListeners.stream().count()).isEqualTo(0);
+  }
+
+  private RecordingPublisher publisher(String... config) throws Exception {
+    return new RecordingPublisher(
+        TestProperties.load(tmp.getRoot().toPath(), "file" + files++, config));
+  }
+
+  private static CurrentUser user(int id) {
+    return new CurrentUser() {
+      @Override
+      public GroupMembership getEffectiveGroups() {
+        return null;
+      }
+
+      @Override
+      public Account.Id getAccountId() {
+        return Account.id(id);
+      }
+    };
+  }
+
+  private static class RecordingPublisher implements Publisher {
+    final List<EventPayload> received = new ArrayList<>();
+    final Properties properties;
+
+    RecordingPublisher(Properties properties) {
+      this.properties = properties;
+    }
+
+    @Override
+    public void start() {}
+
+    @Override
+    public void stop() {}
+
+    @Override
+    public Properties getProperties() {
+      return properties;
+    }
+
+    @Override
+    public String getName() {
+      return properties.getName();
+    }
+
+    @Override
+    public void onEvent(EventPayload payload) {
+      received.add(payload);
+    }
+  }
+
+  /** Only hands out users, the listeners are not asked to check any permission. */
+  private static class FakePermissionBackend extends PermissionBackend {
+    @Override
+    public WithUser currentUser() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public WithUser user(CurrentUser user) {
+      return null;
+    }
+
+    @Override
+    public WithUser absentUser(Account.Id id) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,151 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.rabbitmq.worker;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.googlesource.gerrit.plugins.rabbitmq.testing.TestEvents.patchSetCreated;
+import static com.googlesource.gerrit.plugins.rabbitmq.testing.TestEvents.refUpdated;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.common.base.Ticker;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.server.config.AllUsersName;
+import com.google.gerrit.server.events.PatchSetCreatedEvent;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class VisibilityCacheTest {
+  private static final long TTL_MS = 60000;
+
+  private final CountingChecks checks = new CountingChecks();
+  private final FakeTicker ticker = new FakeTicker();
+  private final VisibilityCache cache =
+      new VisibilityCache(checks, new AllUsersName("All-Users"), 1024, TTL_MS, ticker);
+
+  @Test
+  public void decisionIsCachedPerProjectAndBranch() throws Exception {
+    assertThat(cache.isVisible(patchSetCreated("project", "master", 1))).isTrue();
+    assertThat(cache.isVisible(patchSetCreated("project", "master", 2))).isTrue();
+    assertThat(cache.isVisible(patchSetCreated("project", "stable", 3))).isTrue();
+    assertThat(cache.isVisible(patchSetCreated("other", "master", 4))).isTrue();
+
+    assertThat(checks.refs).containsExactly("project:master", "project:stable", "other:master");
+  }
+
+  @Test
+  public void privateChangesAreAlwaysChecked() throws Exception {
+    PatchSetCreatedEvent event = patchSetCreated("project", "master", 1);
+    event.change.get().isPrivate = true;
+
+    assertThat(cache.isVisible(event)).isTrue();
+    assertThat(cache.isVisible(event)).isTrue();
+
+    assertThat(checks.changes).containsExactly("project:1", "project:1");
+    assertThat(checks.refs).isEmpty();
+  }
+
+  @Test
+  public void accessRightsUpdateDropsTheDecisions() throws Exception {
+    cache.isVisible(patchSetCreated("project", "master", 1));
+
+    cache.invalidate(refUpdated("parent", "refs/meta/config"));
+    cache.isVisible(patchSetCreated("project", "master", 2));
+
+    assertThat(checks.refs).containsExactly("project:master", "project:master");
+  }
+
+  @Test
+  public void groupUpdateDropsTheDecisions() throws Exception {
+    cache.isVisible(patchSetCreated("project", "master", 1));
+
+    cache.invalidate(refUpdated("All-Users", "refs/groups/ab/abcdef"));
+    cache.isVisible(patchSetCreated("project", "master", 2));
+
+    assertThat(checks.refs).containsExactly("project:master", "project:master");
+  }
+
+  @Test
+  public void otherRefUpdatesKeepTheDecisions() throws Exception {
+    cache.isVisible(patchSetCreated("project", "master", 1));
+
+    cache.invalidate(refUpdated("project", "refs/heads/master"));
+    cache.invalidate(refUpdated("project", "refs/groups/ab/abcdef"));
+    cache.invalidate(patchSetCreated("project", "master", 2));
+    cache.isVisible(patchSetCreated("project", "master", 3));
+
+    assertThat(checks.refs).containsExactly("project:master");
+  }
+
+  @Test
+  public void decisionExpiresAfterTheTtl() throws Exception {
+    cache.isVisible(patchSetCreated("project", "master", 1));
+
+    ticker.advance(TTL_MS - 1);
+    cache.isVisible(patchSetCreated("project", "master", 2));
+    assertThat(checks.refs).hasSize(1);
+
+    ticker.advance(1);
+    cache.isVisible(patchSetCreated("project", "master", 3));
+    assertThat(checks.refs).hasSize(2);
+  }
+
+  @Test
+  public void deniedDecisionIsCachedToo() throws Exception {
+    checks.visible = false;
+
+    assertThat(cache.isVisible(patchSetCreated("project", "master", 1))).isFalse();
+    assertThat(cache.isVisible(refUpdated("project", "refs/heads/master"))).isFalse();
+
+    assertThat(checks.refs).containsExactly("project:master");
+  }
+
+  private static class CountingChecks implements VisibilityCache.Checks {
+    final List<String> refs = new ArrayList<>();
+    final List<String> changes = new ArrayList<>();
+    boolean visible = true;
+
+    @Override
+    public boolean isProjectVisible(Project.NameKey project) {
+      return visible;
+    }
+
+    @Override
+    public boolean isRefVisible(Project.NameKey project, String refName) {
+      refs.add(project.get() + ":" + refName.replace("refs/heads/", ""));
+      return visible;
+    }
+
+    @Override
+    public boolean isChangeVisible(Project.NameKey project, Change.Id changeId) {
+      changes.add(project.get() + ":" + changeId.get());
+      return visible;
+    }
+  }
+
+  private static class FakeTicker extends Ticker {
+    private long nanos;
+
+    void advance(long ms) {
+      nanos += MILLISECONDS.toNanos(ms);
+    }
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+  }
+}